@@ -0,0 +1,103 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+/**
+ * A single reproducible bundle held in memory for the benchmarks, generated by
+ * {@link CorpusGenerator} with no churn. The same size always produces the same ids and values.
+ */
+public class Corpus
+{
+    /** The sizes of corpus the benchmarks are run against. */
+    public enum Size
+    {
+        SMALL(100), MEDIUM(5000), HUGE(200000);
+
+        /** The number of properties in the corpus. */
+        public final int props;
+
+        Size (int props)
+        {
+            this.props = props;
+        }
+    }
+
+    /** The ids of the properties, in file order. */
+    public final List<String> ids = Lists.newArrayList();
+
+    /** The English values of the properties, in file order. */
+    public final List<String> values = Lists.newArrayList();
+
+    /**
+     * Creates the properties of a corpus of the given size.
+     */
+    public Corpus (Size size)
+    {
+        _generator = new CorpusGenerator().setProps(size.props).setChurn(0).setUntranslated(0);
+        for (CorpusGenerator.Prop prop : _generator.props(0)) {
+            ids.add(prop.id);
+            values.add(prop.english);
+        }
+    }
+
+    /**
+     * Gets the text of a properties file with the corpus' properties.
+     */
+    public String toProps ()
+    {
+        StringWriter out = new StringWriter();
+        try {
+            _generator.writeEnglish("corpus", 0, out);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex); // not possible with a string writer
+        }
+        return out.toString();
+    }
+
+    /**
+     * Gets the text of a worksheet export with a row for each property, as downloaded in CSV
+     * form. Each language column holds the English value with the language code in front.
+     */
+    public String toCsv (String... languages)
+    {
+        StringBuilder buf = new StringBuilder("Id,EN");
+        for (String language : languages) {
+            buf.append(',').append(language);
+        }
+        buf.append('\n');
+        for (int ii = 0; ii < ids.size(); ii++) {
+            buf.append(ids.get(ii)).append(",\"").append(values.get(ii)).append('"');
+            for (String language : languages) {
+                buf.append(",\"").append(language).append(' ').append(values.get(ii)).append('"');
+            }
+            buf.append('\n');
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Writes the properties to a temporary file that is deleted when the JVM exits.
+     */
+    public File writeProps ()
+        throws IOException
+    {
+        File file = File.createTempFile("corpus", ".properties");
+        file.deleteOnExit();
+        Files.write(toProps(), file, Charsets.ISO_8859_1);
+        return file;
+    }
+
+    protected final CorpusGenerator _generator;
+}
@@ -0,0 +1,443 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.threerings.tools.gxlate.spreadsheet.Fixtures;
+import com.threerings.tools.gxlate.util.FileUtil;
+
+/**
+ * Writes reproducible bundles for scale testing. For each bundle there is an English properties
+ * file, a translated file per language and a CSV fixture in the form of a worksheet export.
+ * Optionally, all the fixtures are also saved as a spreadsheet snapshot, so that the download
+ * goal can be run against them with {@code gxlate.snapshot}.
+ *
+ * <p>The English files use all the line kinds {@code PropsFile} recognizes: an id keyword,
+ * parent lines, banners, comments with and without a space, blank lines and values continued
+ * over several lines. Values have message parameters, escapes and non-ASCII characters.</p>
+ *
+ * <p>A fraction of the properties, given by the churn rate, differs between the English file
+ * and the fixtures: the English has changed, the property is new, or it has been removed.
+ * Another fraction is untranslated, and has a placeholder in the translated files.</p>
+ */
+public class CorpusGenerator
+{
+    /**
+     * A generated property.
+     */
+    public static class Prop
+    {
+        /** The id of the property. */
+        public final String id;
+
+        /** The section comment to write before the property, or null to continue the last. */
+        public final String section;
+
+        /** The current English value, or null if the property has been removed. */
+        public final String english;
+
+        /** The English value that was translated, or null if the property is new. */
+        public final String translated;
+
+        /** Whether the translators have done this property. */
+        public final boolean done;
+
+        public Prop (String id, String section, String english, String translated, boolean done)
+        {
+            this.id = id;
+            this.section = section;
+            this.english = english;
+            this.translated = translated;
+            this.done = done;
+        }
+    }
+
+    /**
+     * Generates a corpus into a directory. Usage: {@code CorpusGenerator <dir> [--props n]
+     * [--bundles n] [--languages de,fr] [--churn rate] [--untranslated rate] [--seed n]
+     * [--snapshot file]}.
+     */
+    public static void main (String[] args)
+        throws IOException
+    {
+        if (args.length == 0 || args.length % 2 == 0) {
+            System.err.println("Usage: CorpusGenerator <dir> [--props n] [--bundles n] " +
+                "[--languages de,fr] [--churn rate] [--untranslated rate] [--seed n] " +
+                "[--snapshot file]");
+            System.exit(1);
+        }
+        CorpusGenerator gen = new CorpusGenerator();
+        File snapshot = null;
+        for (int ii = 1; ii < args.length; ii += 2) {
+            String opt = args[ii], value = args[ii + 1];
+            if (opt.equals("--props")) {
+                gen.setProps(Integer.parseInt(value));
+            } else if (opt.equals("--bundles")) {
+                gen.setBundles(Integer.parseInt(value));
+            } else if (opt.equals("--languages")) {
+                gen.setLanguages(value.split(","));
+            } else if (opt.equals("--churn")) {
+                gen.setChurn(Double.parseDouble(value));
+            } else if (opt.equals("--untranslated")) {
+                gen.setUntranslated(Double.parseDouble(value));
+            } else if (opt.equals("--seed")) {
+                gen.setSeed(Long.parseLong(value));
+            } else if (opt.equals("--snapshot")) {
+                snapshot = new File(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + opt);
+            }
+        }
+        Map<String, File> fixtures = gen.generate(new File(args[0]));
+        if (snapshot != null) {
+            Fixtures.saveSnapshot(snapshot, fixtures);
+        }
+    }
+
+    /** Sets the number of properties per bundle. */
+    public CorpusGenerator setProps (int props)
+    {
+        _props = props;
+        return this;
+    }
+
+    /** Sets the number of bundles. */
+    public CorpusGenerator setBundles (int bundles)
+    {
+        _bundles = bundles;
+        return this;
+    }
+
+    /** Sets the codes of the languages to translate into. */
+    public CorpusGenerator setLanguages (String... languages)
+    {
+        _languages = Arrays.asList(languages);
+        return this;
+    }
+
+    /** Sets the fraction of properties that are changed, added or removed. */
+    public CorpusGenerator setChurn (double churn)
+    {
+        _churn = churn;
+        return this;
+    }
+
+    /** Sets the fraction of properties that are not yet translated. */
+    public CorpusGenerator setUntranslated (double untranslated)
+    {
+        _untranslated = untranslated;
+        return this;
+    }
+
+    /** Sets the seed from which everything is generated. */
+    public CorpusGenerator setSeed (long seed)
+    {
+        _seed = seed;
+        return this;
+    }
+
+    /**
+     * Writes all the bundles and their fixtures to the given directory.
+     * @return the CSV fixture of each bundle, keyed by worksheet name
+     */
+    public Map<String, File> generate (File dir)
+        throws IOException
+    {
+        FileUtil.makeDirs(dir);
+        Map<String, File> fixtures = Maps.newLinkedHashMap();
+        for (int ii = 0; ii < _bundles; ii++) {
+            String name = "bundle" + ii;
+            File csv = new File(dir, name + ".csv");
+            List<Writer> translations = Lists.newArrayList();
+            Writer english = open(new File(dir, name + ".properties"), Charsets.ISO_8859_1);
+            Writer fixture = open(csv, Charsets.UTF_8);
+            try {
+                for (String language : _languages) {
+                    translations.add(open(new File(dir, name + "_" + language + ".properties"),
+                        Charsets.ISO_8859_1));
+                }
+                writeBundle(name, ii, english, translations, fixture);
+            } finally {
+                english.close();
+                fixture.close();
+                for (Writer writer : translations) {
+                    writer.close();
+                }
+            }
+            fixtures.put(name, csv);
+        }
+        return fixtures;
+    }
+
+    /**
+     * Generates the properties of the bundle with the given index, in file order.
+     */
+    public List<Prop> props (int bundle)
+    {
+        List<Prop> props = Lists.newArrayListWithExpectedSize(_props);
+        Random rando = new Random(_seed + bundle);
+        for (int ii = 0; ii < _props; ii++) {
+            props.add(makeProp(rando, ii));
+        }
+        return props;
+    }
+
+    /**
+     * Writes the English properties of a bundle, with no fixtures or translations.
+     */
+    public void writeEnglish (String name, int bundle, Writer english)
+        throws IOException
+    {
+        writeBundle(name, bundle, english, Lists.<Writer>newArrayList(), null);
+    }
+
+    protected void writeBundle (String name, int bundle, Writer english, List<Writer> translations,
+        Writer fixture)
+        throws IOException
+    {
+        List<Writer> all = Lists.newArrayList(translations);
+        all.add(english);
+        writeLine(all, "# $Id: " + name + ".properties " + (bundle + 1) + " 2014-01-01 gxlate $");
+        if (bundle % 2 == 1) {
+            writeLine(all, "__parent = bundle" + (bundle - 1));
+        }
+        writeLine(all, "");
+
+        if (fixture != null) {
+            writeFixtureHeaders(fixture);
+        }
+
+        Random rando = new Random(_seed + bundle);
+        for (int ii = 0; ii < _props; ii++) {
+            Prop prop = makeProp(rando, ii);
+            if (prop.section != null) {
+                writeLine(all, "#...................................................");
+                writeLine(all, "# " + prop.section);
+                if (ii % 7 == 3) {
+                    writeLine(all, "#TODO: review the lengths of these");
+                }
+                writeLine(all, "");
+            }
+            if (prop.english != null) {
+                writeProp(english, prop.id, prop.english);
+            }
+            for (int jj = 0; jj < translations.size(); jj++) {
+                String language = _languages.get(jj);
+                if (prop.translated == null) {
+                    continue;
+                }
+                writeProp(translations.get(jj), prop.id, prop.done ?
+                    translate(jj, prop.translated) :
+                    "[" + language + "] " + prop.translated);
+            }
+            if (fixture != null && prop.translated != null) {
+                writeFixtureRow(fixture, prop);
+            }
+        }
+    }
+
+    protected Prop makeProp (Random rando, int idx)
+    {
+        String id = String.format("%s.%s_%d", PREFIXES[idx % PREFIXES.length],
+            WORDS[rando.nextInt(WORDS.length)], idx);
+        String section = idx % SECTION_SIZE == 0 ?
+            "Section " + (idx / SECTION_SIZE) + " " + sentence(rando, false) : null;
+        String english = sentence(rando, true), translated = english;
+        if (rando.nextDouble() < _churn) {
+            switch (rando.nextInt(3)) {
+            case 0:
+                translated = sentence(rando, true);
+                break;
+            case 1:
+                translated = null;
+                break;
+            case 2:
+                english = null;
+                break;
+            }
+        }
+        boolean done = rando.nextDouble() >= _untranslated;
+        return new Prop(id, section, english, translated, done);
+    }
+
+    protected void writeFixtureHeaders (Writer fixture)
+        throws IOException
+    {
+        List<String> headers = Lists.newArrayList(FIXED_HEADERS);
+        for (String language : _languages) {
+            String stem = language.toUpperCase();
+            headers.add(stem);
+            headers.add(stem + "Verify");
+            headers.add(stem + "LastImported");
+        }
+        writeCsv(fixture, headers);
+    }
+
+    protected void writeFixtureRow (Writer fixture, Prop prop)
+        throws IOException
+    {
+        List<String> values = Lists.newArrayList(
+            "", prop.id, "General", "", "", "01/01/14 00:00", prop.translated);
+        for (int ii = 0; ii < _languages.size(); ii++) {
+            values.add(prop.done ? translate(ii, prop.translated) : "");
+            values.add("");
+            values.add(prop.done ? "01/01/14 00:00" : "");
+        }
+        writeCsv(fixture, values);
+    }
+
+    /**
+     * Makes up a sentence of a dozen or so words. Values may also have message parameters,
+     * non-ASCII words, apostrophes and the odd line break.
+     */
+    protected static String sentence (Random rando, boolean value)
+    {
+        StringBuilder buf = new StringBuilder();
+        int params = 0;
+        for (int ii = 4 + rando.nextInt(value ? 24 : 8); ii > 0; ii--) {
+            if (buf.length() > 0) {
+                buf.append(value && rando.nextInt(100) == 0 ? '\n' : ' ');
+            }
+            int kind = value ? rando.nextInt(16) : 15;
+            if (kind < 2) {
+                buf.append('{').append(params++).append('}');
+            } else if (kind < 3) {
+                buf.append(FOREIGN_WORDS[rando.nextInt(FOREIGN_WORDS.length)]);
+            } else if (kind < 4) {
+                buf.append("don't");
+            } else {
+                buf.append(WORDS[rando.nextInt(WORDS.length)]);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Makes a fake translation by accenting the vowels of the English, leaving the parameters
+     * alone.
+     */
+    protected static String translate (int index, String english)
+    {
+        String accents = ACCENTS[index % ACCENTS.length];
+        StringBuilder buf = new StringBuilder(english.length() + 4);
+        for (int ii = 0; ii < english.length(); ii++) {
+            char c = english.charAt(ii);
+            int vowel = VOWELS.indexOf(c);
+            buf.append(vowel == -1 ? c : accents.charAt(vowel));
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Writes a property escaped like {@link java.util.Properties#store}, wrapped onto
+     * continuation lines at spaces once a line is long enough.
+     */
+    protected static void writeProp (Writer out, String id, String value)
+        throws IOException
+    {
+        out.write(id);
+        out.write(" = ");
+        int col = id.length() + 3;
+        for (int ii = 0; ii < value.length(); ii++) {
+            char c = value.charAt(ii);
+            if (c == ' ' && col > WRAP_COLS && ii + 1 < value.length()) {
+                out.write(" \\\n    ");
+                col = 4;
+                continue;
+            }
+            if (c == '\\') {
+                out.write("\\\\");
+            } else if (c == '\n') {
+                out.write("\\n");
+            } else if (c == ' ' && ii == 0) {
+                out.write("\\ ");
+            } else if (c < 0x20 || c > 0x7e) {
+                out.write(String.format("\\u%04x", (int)c));
+            } else {
+                out.write(c);
+            }
+            col++;
+        }
+        out.write('\n');
+    }
+
+    protected static void writeLine (List<Writer> outs, String line)
+        throws IOException
+    {
+        for (Writer out : outs) {
+            out.write(line);
+            out.write('\n');
+        }
+    }
+
+    protected static void writeCsv (Writer out, List<String> values)
+        throws IOException
+    {
+        for (int ii = 0; ii < values.size(); ii++) {
+            if (ii > 0) {
+                out.write(',');
+            }
+            out.write('"');
+            out.write(values.get(ii).replace("\"", "\"\""));
+            out.write('"');
+        }
+        out.write('\n');
+    }
+
+    protected static Writer open (File file, Charset charset)
+        throws IOException
+    {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), charset));
+    }
+
+    protected int _props = 1000;
+    protected int _bundles = 1;
+    protected List<String> _languages = Arrays.asList("de", "fr");
+    protected double _churn = 0.05;
+    protected double _untranslated = 0.02;
+    protected long _seed = SEED;
+
+    protected static final long SEED = 20140101L;
+    protected static final int SECTION_SIZE = 40;
+    protected static final int WRAP_COLS = 80;
+
+    protected static final String[] PREFIXES = {"m", "e", "b", "t", "x.admin"};
+
+    protected static final String[] WORDS = {
+        "the", "player", "has", "joined", "your", "crew", "ship", "gold", "not", "enough",
+        "you", "cannot", "do", "that", "while", "sailing", "island", "trade", "purchase",
+        "inventory", "is", "full", "please", "try", "again", "later", "welcome", "back",
+    };
+
+    protected static final String[] FOREIGN_WORDS = {
+        "caf\u00e9", "na\u00efve", "\u00c4rger", "se\u00f1or", "\u8239", "\u00fcber",
+        "\u0434\u0430", "fa\u00e7ade",
+    };
+
+    protected static final List<String> FIXED_HEADERS = Arrays.asList(
+        "Context", "Id", "Type", "FieldSize", "TechNotes", "ENLastUpdated", "EN");
+
+    protected static final String VOWELS = "aeiou";
+    protected static final String[] ACCENTS = {
+        "\u00e4\u00eb\u00ef\u00f6\u00fc", "\u00e1\u00e9\u00ed\u00f3\u00fa",
+        "\u00e0\u00e8\u00ec\u00f2\u00f9", "\u00e2\u00ea\u00ee\u00f4\u00fb",
+    };
+}
@@ -0,0 +1,79 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.io.ByteStreams;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.threerings.tools.gxlate.props.PropsFile;
+import com.threerings.tools.gxlate.props.Translator;
+
+/**
+ * Measures reading a properties file and writing it back out with a translator that returns
+ * the English values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=5)
+@Measurement(iterations=5)
+@Fork(1)
+public class PropsFileBenchmark
+{
+    @Param
+    public Corpus.Size size;
+
+    @Setup
+    public void setUp ()
+        throws IOException
+    {
+        _file = new Corpus(size).writeProps();
+        _props = new PropsFile(_file);
+    }
+
+    @Benchmark
+    public PropsFile load ()
+        throws IOException
+    {
+        return new PropsFile(_file);
+    }
+
+    @Benchmark
+    public void write ()
+        throws IOException
+    {
+        BufferedWriter writer = new BufferedWriter(
+            new OutputStreamWriter(ByteStreams.nullOutputStream()));
+        _props.write(writer, PASS_THROUGH);
+        writer.flush();
+    }
+
+    protected File _file;
+    protected PropsFile _props;
+
+    protected static final Translator PASS_THROUGH = new Translator() {
+        @Override public String translate (String id, String source) {
+            return source;
+        }
+    };
+}
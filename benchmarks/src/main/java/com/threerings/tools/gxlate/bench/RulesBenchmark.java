@@ -0,0 +1,107 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate.bench;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.threerings.tools.gxlate.Field;
+import com.threerings.tools.gxlate.Rules;
+import com.threerings.tools.gxlate.props.PropsFile;
+
+/**
+ * Measures applying a scope's rules to every property of a corpus. The rules are a mix of the
+ * kinds seen in real configurations: id prefixes and suffixes, exact ids, globs and comment
+ * patterns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=5)
+@Measurement(iterations=5)
+@Fork(1)
+public class RulesBenchmark
+{
+    @Param
+    public Corpus.Size size;
+
+    @Param({"20", "200"})
+    public int rules;
+
+    @Setup
+    public void setUp ()
+        throws IOException
+    {
+        Corpus corpus = new Corpus(size);
+        _entries = Lists.newArrayList(new PropsFile(corpus.writeProps()).properties());
+        _scope = new Rules.Scope("corpus.properties", "", makeRules(corpus, rules));
+        _context = new Rules.Context(Collections.<Rules.Rule>emptyList(), 0);
+    }
+
+    @Benchmark
+    public void apply (Blackhole hole)
+    {
+        Map<Field, String> fields = Maps.newEnumMap(Field.class);
+        for (PropsFile.Entry entry : _entries) {
+            fields.clear();
+            hole.consume(_scope.apply(entry, fields, _context));
+        }
+    }
+
+    protected static Rules.Rule[] makeRules (Corpus corpus, int count)
+    {
+        Random rando = new Random(CorpusGenerator.SEED);
+        List<Rules.Rule> rules = Lists.newArrayList();
+        for (int ii = 0; ii < count - 1; ii++) {
+            String word = CorpusGenerator.WORDS[rando.nextInt(CorpusGenerator.WORDS.length)];
+            switch (ii % 5) {
+            case 0:
+                rules.add(Rules.ID.matches("x\\.admin\\." + word + "_.*").omit());
+                break;
+            case 1:
+                rules.add(Rules.ID.matches(".*_" + rando.nextInt(corpus.ids.size())).ignore());
+                break;
+            case 2:
+                rules.add(Rules.ID.equals(corpus.ids.get(rando.nextInt(corpus.ids.size())))
+                    .thenSet("Button", "12"));
+                break;
+            case 3:
+                rules.add(Rules.ID.smatches("t." + word + "_*").thenSet("Tooltip"));
+                break;
+            case 4:
+                rules.add(Rules.COMMENT.matches("Section " + rando.nextInt(100) + "(\\s.*)?")
+                    .thenSet("Chat"));
+                break;
+            }
+        }
+        rules.add(Rules.ELSE.thenSet("General"));
+        return rules.toArray(new Rules.Rule[rules.size()]);
+    }
+
+    protected List<PropsFile.Entry> _entries;
+    protected Rules.Scope _scope;
+    protected Rules.Context _context;
+}
@@ -0,0 +1,77 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.threerings.tools.gxlate.DefaultTranslator;
+import com.threerings.tools.gxlate.Language;
+
+/**
+ * Measures checking the message parameters of translations against their English sources.
+ * Every fourth translation drops or adds a parameter, so that the error paths are included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=5)
+@Measurement(iterations=5)
+@Fork(1)
+public class TranslatorBenchmark
+{
+    @Param
+    public Corpus.Size size;
+
+    @Setup
+    public void setUp ()
+    {
+        Corpus corpus = new Corpus(size);
+        _english = corpus.values;
+        for (int ii = 0; ii < _english.size(); ii++) {
+            String english = _english.get(ii);
+            switch (ii % 8) {
+            case 3:
+                _foreign.add("DE " + english.replaceFirst("\\{\\d+\\}", ""));
+                break;
+            case 7:
+                _foreign.add("DE " + english + " {9}");
+                break;
+            default:
+                _foreign.add("DE " + english);
+                break;
+            }
+        }
+        _translator = new DefaultTranslator(null, null, null, new Language("de"), null);
+    }
+
+    @Benchmark
+    public void validate (Blackhole hole)
+    {
+        for (int ii = 0, nn = _english.size(); ii < nn; ii++) {
+            hole.consume(_translator.validate(_english.get(ii), _foreign.get(ii)));
+        }
+    }
+
+    protected List<String> _english;
+    protected final List<String> _foreign = Lists.newArrayList();
+    protected DefaultTranslator _translator;
+}
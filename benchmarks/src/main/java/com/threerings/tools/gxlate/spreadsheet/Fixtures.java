@@ -0,0 +1,50 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate.spreadsheet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+
+/**
+ * Converts generated worksheet fixtures into the forms the plugin reads. This lives in the
+ * spreadsheet package so that it can build tables without a worksheet.
+ */
+public class Fixtures
+{
+    /**
+     * Loads a table from a fixture in the form of a worksheet export.
+     */
+    public static Table loadCsv (File csv)
+        throws IOException
+    {
+        Reader in = new InputStreamReader(new FileInputStream(csv), Charsets.UTF_8);
+        try {
+            return Table.read(new CsvReader(in, ','));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Saves the given fixtures, keyed by worksheet name, as a spreadsheet snapshot.
+     */
+    public static void saveSnapshot (File snapshot, Map<String, File> fixtures)
+        throws IOException
+    {
+        Map<String, Table> tables = Maps.newLinkedHashMap();
+        for (Map.Entry<String, File> entry : fixtures.entrySet()) {
+            tables.put(entry.getKey(), loadCsv(entry.getValue()));
+        }
+        Snapshot.save(snapshot, tables);
+    }
+}
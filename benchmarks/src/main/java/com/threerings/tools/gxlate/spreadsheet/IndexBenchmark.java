@@ -0,0 +1,85 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate.spreadsheet;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.threerings.tools.gxlate.bench.Corpus;
+
+/**
+ * Measures indexing a table by id and looking up every row of it. This lives in the
+ * spreadsheet package so that it can build tables without a worksheet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=5)
+@Measurement(iterations=5)
+@Fork(1)
+public class IndexBenchmark
+{
+    @Param
+    public Corpus.Size size;
+
+    @Setup
+    public void setUp ()
+        throws IOException, Index.IndexError
+    {
+        Corpus corpus = new Corpus(size);
+        _csv = corpus.toCsv("DE", "FR");
+        _table = read();
+        _index = new Index(_table, "Id");
+        for (String id : corpus.ids) {
+            _keys.add(_index.key(ImmutableMap.of("Id", id)));
+        }
+    }
+
+    @Benchmark
+    public Table read ()
+        throws IOException
+    {
+        return Table.read(new CsvReader(new StringReader(_csv), ','));
+    }
+
+    @Benchmark
+    public Index build ()
+        throws Index.IndexError
+    {
+        return new Index(_table, "Id");
+    }
+
+    @Benchmark
+    public void lookup (Blackhole hole)
+    {
+        for (Index.Key key : _keys) {
+            hole.consume(_index.lookup(key));
+        }
+    }
+
+    protected String _csv;
+    protected Table _table;
+    protected Index _index;
+    protected final List<Index.Key> _keys = Lists.newArrayList();
+}
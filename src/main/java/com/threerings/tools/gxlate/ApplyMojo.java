@@ -0,0 +1,73 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import com.threerings.tools.gxlate.spreadsheet.Table;
+
+/**
+ * Goal which writes the changes saved by the upload goal to {@code gxlate.planFile}. The English
+ * properties files are not read again, so the plan can be reviewed before it is applied: with
+ * {@code gxlate.checkOnly}, every planned insert, update and delete is listed with its cell
+ * values and nothing is written. Bundles whose worksheets have changed since the plan was made
+ * are left alone.
+ */
+@Mojo(name="apply")
+public class ApplyMojo extends BaseMojo
+{
+    /**
+     * The plan saved by the upload goal.
+     */
+    @Parameter(property="gxlate.planFile", required=true)
+    private File planFile;
+
+    @Override
+    protected void run ()
+        throws Exception
+    {
+        UploadPlan plan = UploadPlan.load(planFile);
+        for (UploadPlan.Bundle bundle : plan.bundles) {
+            getLog().info(String.format("Planned %s for '%s'", bundle.summary(), bundle.name));
+        }
+        if (plan.isEmpty()) {
+            getLog().info("No changes to apply.");
+            return;
+        }
+        if (checkOnly()) {
+            for (UploadPlan.Bundle bundle : plan.bundles) {
+                for (String line : bundle.describe()) {
+                    getLog().info(line);
+                }
+            }
+            getLog().info("Check only, no changes will be made.");
+            return;
+        }
+
+        Document doc = new Document();
+        List<String> resumed = resumeJournal(doc);
+        UploadPlan rest = new UploadPlan();
+        for (UploadPlan.Bundle bundle : plan.bundles) {
+            if (resumed.contains(bundle.name)) {
+                getLog().info(String.format("Skipping '%s', its changes were resumed from the " +
+                    "sync journal", bundle.name));
+            } else {
+                rest.bundles.add(bundle);
+            }
+        }
+
+        Map<String, String> applied = applyPlan(doc, rest, ImmutableMap.<String, Table>of());
+        getLog().info(String.format("Applied the changes to %d of %d worksheet(s).",
+            applied.size(), rest.bundles.size()));
+    }
+}
@@ -7,16 +7,29 @@ package com.threerings.tools.gxlate;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URL;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.PatternSyntaxException;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.gdata.data.BaseEntry;
 import com.google.gdata.data.docs.DocumentListEntry;
 import com.google.gdata.data.spreadsheet.WorksheetEntry;
 
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -25,14 +38,17 @@ import org.apache.maven.plugins.annotations.Parameter;
 import com.threerings.tools.gxlate.Domain.Row;
 import com.threerings.tools.gxlate.props.PropsFile;
 import com.threerings.tools.gxlate.spreadsheet.Folder;
+import com.threerings.tools.gxlate.spreadsheet.Snapshot;
+import com.threerings.tools.gxlate.spreadsheet.SpreadsheetKeys;
 import com.threerings.tools.gxlate.spreadsheet.Table;
+import com.threerings.tools.gxlate.spreadsheet.TokenCache;
 
 public abstract class BaseMojo extends AbstractMojo
 {
     /**
      * The id of the google docs folder where the translation spreadsheet lives.
      */
-    @Parameter(property="gxlate.folderId", required=true)
+    @Parameter(property="gxlate.folderId")
     private String folderId;
 
     /**
@@ -41,6 +57,20 @@ public abstract class BaseMojo extends AbstractMojo
     @Parameter(property="gxlate.docName")
     private String docName;
 
+    /**
+     * The key of the spreadsheet to target, as found in its address. If given, the spreadsheet
+     * is opened directly and the folder need not be configured or listed.
+     */
+    @Parameter(property="gxlate.spreadsheetKey")
+    private String spreadsheetKey;
+
+    /**
+     * File in which to remember the keys of spreadsheets found by {@code gxlate.docName}, so
+     * that later builds need not list the folder to find them again.
+     */
+    @Parameter(property="gxlate.keyCache", defaultValue="${user.home}/.gxlate/keys")
+    private File keyCache;
+
     /**
      * The directory in which to find properties files.
      */
@@ -60,18 +90,81 @@ public abstract class BaseMojo extends AbstractMojo
     @Parameter(property="gxlate.checkOnly", defaultValue="false")
     private boolean checkOnly;
 
+    /**
+     * The number of threads to use for CPU bound work, such as applying rules to properties, and
+     * for writing uploads to several worksheets at once. If more than one, rules that insert into
+     * named sets are applied to all properties first, so that rules testing those sets see every
+     * insertion regardless of property order.
+     */
+    @Parameter(property="gxlate.threads", defaultValue="1")
+    private int threads;
+
+    /**
+     * Whether to measure how often each rule matches and how long it takes, and log a report
+     * at the end of the execution. Rules are tested one by one while profiling.
+     */
+    @Parameter(property="gxlate.profileRules", defaultValue="false")
+    private boolean profileRules;
+
+    /**
+     * Whether goals that only read the spreadsheet should download each worksheet in CSV form
+     * rather than as a feed of cells. This transfers far less data, but cells are then looked
+     * up one at a time if they need to be updated.
+     */
+    @Parameter(property="gxlate.exportTables", defaultValue="false")
+    private boolean exportTables;
+
+    /**
+     * A local copy of the spreadsheet, as written by the snapshot goal. If set, goals that only
+     * read the spreadsheet load their tables from this file instead of google docs, and the
+     * folder and account need not be configured.
+     */
+    @Parameter(property="gxlate.snapshot")
+    private File snapshot;
+
+    /**
+     * Where to write the time taken by each phase of the goal, as JSON. A summary is also
+     * logged.
+     */
+    @Parameter(property="gxlate.timingsFile",
+        defaultValue="${project.build.directory}/gxlate-timings.json")
+    private File timingsFile;
+
+    /**
+     * File in which to record the progress of uploads as they are written to the spreadsheet.
+     * If an upload is interrupted, the next upload, apply or watch finishes writing its changes
+     * before planning any more.
+     */
+    @Parameter(property="gxlate.journalFile",
+        defaultValue="${project.build.directory}/gxlate-journal.bin")
+    private File journalFile;
+
     /**
      * The Google account name to log into.
      */
-    @Parameter(property="google.username", required=true)
+    @Parameter(property="google.username")
     private String username;
 
     /**
      * The password for the Google account.
      */
-    @Parameter(property="google.password", required=true)
+    @Parameter(property="google.password")
     private String password;
 
+    /**
+     * File in which to keep the authentication tokens of the google services, so that later
+     * builds and the other modules of a reactor build need not log in again.
+     */
+    @Parameter(property="gxlate.tokenCache", defaultValue="${user.home}/.gxlate/tokens")
+    private File tokenCache;
+
+    /**
+     * The number of hours for which a cached authentication token is used. Zero disables the
+     * cache and logs in on every execution.
+     */
+    @Parameter(property="gxlate.tokenHours", defaultValue="12")
+    private int tokenHours;
+
     /**
      * Rules to apply to source files. For each file processed, if the base name of the file
      * matches the {@code <file>} member of a rule in the list, then for each property processed,
@@ -88,10 +181,33 @@ public abstract class BaseMojo extends AbstractMojo
     /** Derived from the input parameter {@link #languages} by the base class' execute. */
     private final Set<Language> languageSet = Sets.newHashSet();
 
+    /** Derived from the input parameter {@link #rules} by the base class' execute. Maps the base
+     * name of each bundle to its compiled rules, in configuration order. */
+    private ImmutableListMultimap<String, Rules.Rule> ruleTable;
+
+    /** Rule timings, if enabled by {@link #profileRules}. */
+    private Rules.Profile profile;
+
+    /** The maven session, which scopes the sharing of google docs state between executions. */
+    @Parameter(defaultValue="${session}", readonly=true)
+    private MavenSession mavenSession;
+
+    /** The google docs state of this execution, shared with others in the build. */
+    private DocSession docSession;
+
+    /** The time taken by each phase of the execution. */
+    private Timings timings;
+
+    /** Runs CPU bound tasks when more than one thread is configured, created on demand. */
+    private ExecutorService executor;
+
     /** Accumulation of errors during execution. If any failures are present at the end, the
      * build is failed. */
     protected final List<Exception> failures = Lists.newArrayList();
 
+    /** The domain of all bundles processed by the plugin. */
+    protected static final Domain DOMAIN = new Domain.Simple();
+
     public static class SimpleRule
     {
         public String file;
@@ -103,37 +219,204 @@ public abstract class BaseMojo extends AbstractMojo
         }
     }
 
+    /**
+     * Provides the tables of the spreadsheet by worksheet name.
+     */
+    public interface TableSource
+    {
+        /**
+         * Loads the worksheet with the given name as a {@code Table}.
+         */
+        Table loadTable (String tabName)
+            throws Exception;
+    }
+
     /**
      * Opens the configured google docs folder and document. Provides a method for opening a
      * worksheet.
      */
     public class Document
+        implements TableSource
     {
         public final Folder folder;
-        public final DocumentListEntry entry;
+
+        /** The key of the spreadsheet. */
+        public final String key;
+
+        /** The name of the spreadsheet, or its key if it was given directly. */
+        public final String title;
 
         public Document ()
             throws Exception
         {
             folder = openFolder();
-            entry = requireEntry(folder.getSpreadsheets(), "document", docName);
+            if (spreadsheetKey != null) {
+                key = spreadsheetKey;
+                title = docName != null ? docName : spreadsheetKey;
+            } else if (docName != null) {
+                key = folder.findSpreadsheetKey(docName, keyCache == null ? null :
+                    new SpreadsheetKeys(keyCache));
+                if (key == null) {
+                    throw new Exception("No documents found with name " + docName);
+                }
+                title = docName;
+            } else {
+                DocumentListEntry entry = requireEntry(folder.getSpreadsheets(), "document", null);
+                key = entry.getDocId();
+                title = entry.getTitle().getPlainText();
+            }
         }
 
         /**
-         * Downloads a worksheet from google docs and converts to a {@code Table}.
+         * Gets all the worksheets of the document. The worksheet listing is only downloaded once
+         * per document and build.
          */
-        protected Table loadTable (String tabName)
+        protected List<WorksheetEntry> getWorksheets ()
             throws Exception
         {
-            String docTitle = entry.getTitle().getPlainText();
-            getLog().debug(String.format("Searching for worksheet '%s' in '%s'", tabName, docTitle));
+            return docSession().getWorksheets(key,
+                new Callable<List<WorksheetEntry>>() {
+                    @Override public List<WorksheetEntry> call ()
+                        throws Exception
+                    {
+                        Timings.Timer timer = timings.start(Timings.Phase.DOWNLOAD, null);
+                        try {
+                            return Lists.newArrayList(folder.getWorksheets(key));
+                        } finally {
+                            timer.stop();
+                        }
+                    }
+                });
+        }
 
-            WorksheetEntry worksheet = requireEntry(folder.getWorksheets(entry), "worksheet", tabName);
-            String worksheetTitle = worksheet.getTitle().getPlainText();
-            getLog().info(String.format("Downloading '%s' of '%s'", worksheetTitle, docTitle));
+        /**
+         * Finds a worksheet of the document by name.
+         */
+        protected WorksheetEntry findWorksheet (String tabName)
+            throws Exception
+        {
+            getLog().debug(String.format("Searching for worksheet '%s' in '%s'", tabName, title));
+            return requireEntry(getWorksheets(), "worksheet", tabName);
+        }
 
-            return new Table(worksheet);
+        /**
+         * Downloads a worksheet from google docs and converts to a {@code Table}, in CSV form if
+         * so configured. Use this for tables that are mostly read.
+         */
+        @Override public Table loadTable (String tabName)
+            throws Exception
+        {
+            return readTable(findWorksheet(tabName));
         }
+
+        /**
+         * Downloads a worksheet from google docs and converts to a {@code Table}, in CSV form if
+         * so configured. Use this for tables that are mostly read. The table is shared with any
+         * other execution in the build that reads the same worksheet.
+         */
+        protected Table readTable (final WorksheetEntry worksheet)
+            throws Exception
+        {
+            if (!exportTables) {
+                return loadTable(worksheet);
+            }
+            final String title = worksheet.getTitle().getPlainText();
+            return docSession().getTable(key, title, true, new Callable<Table>() {
+                @Override public Table call ()
+                    throws Exception
+                {
+                    getLog().info(String.format("Exporting '%s' of '%s'",
+                        title, Document.this.title));
+                    Timings.Timer timer = timings.start(Timings.Phase.DOWNLOAD, title);
+                    try {
+                        return Table.export(worksheet, key);
+                    } finally {
+                        timer.stop();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Downloads a worksheet from google docs and converts to a {@code Table}. The table is
+         * shared with any other execution in the build that loads the same worksheet, until
+         * one of them writes to it.
+         */
+        protected Table loadTable (final WorksheetEntry worksheet)
+            throws Exception
+        {
+            final String title = worksheet.getTitle().getPlainText();
+            return docSession().getTable(key, title, false, new Callable<Table>() {
+                @Override public Table call ()
+                    throws Exception
+                {
+                    getLog().info(String.format("Downloading '%s' of '%s'",
+                        title, Document.this.title));
+                    Timings.Timer timer = timings.start(Timings.Phase.DOWNLOAD, title);
+                    try {
+                        return new Table(worksheet);
+                    } finally {
+                        timer.stop();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Gets a string that changes whenever the contents of the worksheet change.
+         */
+        protected String getVersion (WorksheetEntry worksheet)
+        {
+            return Table.getVersion(worksheet);
+        }
+
+        /**
+         * Fetches the current entry of a worksheet, whose version and edit link reflect all the
+         * changes made so far.
+         */
+        protected WorksheetEntry refresh (WorksheetEntry worksheet)
+            throws Exception
+        {
+            Timings.Timer timer = timings.start(
+                Timings.Phase.DOWNLOAD, worksheet.getTitle().getPlainText());
+            try {
+                return folder.getService().getEntry(
+                    new URL(worksheet.getSelfLink().getHref()), WorksheetEntry.class);
+            } finally {
+                timer.stop();
+            }
+        }
+    }
+
+    /**
+     * Provides the tables saved in the configured snapshot file.
+     */
+    public class SnapshotTables
+        implements TableSource
+    {
+        public SnapshotTables ()
+            throws IOException
+        {
+            getLog().info("Loading snapshot '" + snapshot + "'");
+            Timings.Timer timer = timings.start(Timings.Phase.DOWNLOAD, null);
+            try {
+                _tables = Snapshot.load(snapshot);
+            } finally {
+                timer.stop();
+            }
+        }
+
+        @Override public Table loadTable (String tabName)
+            throws Exception
+        {
+            Table table = _tables.get(tabName);
+            if (table == null) {
+                throw new Exception("No worksheets found with name " + tabName + " in snapshot");
+            }
+            return table;
+        }
+
+        protected Map<String, Table> _tables;
     }
 
     public final void execute ()
@@ -150,10 +433,34 @@ public abstract class BaseMojo extends AbstractMojo
             languageSet.add(lang);
         }
 
+        ImmutableListMultimap.Builder<String, Rules.Rule> ruleTable =
+            ImmutableListMultimap.builder();
+        if (rules != null) {
+            for (SimpleRule rule : rules) {
+                try {
+                    ruleTable.put(rule.file, rule.toRule());
+                } catch (PatternSyntaxException ex) {
+                    throw new MojoExecutionException("Invalid rule for " + rule.file, ex);
+                }
+            }
+        }
+        this.ruleTable = ruleTable.build();
+        profile = profileRules ? new Rules.Profile() : null;
+        timings = new Timings(getClass().getSimpleName());
+
         try {
             run();
         } catch (Exception ex) {
             throw new MojoExecutionException("", ex);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+            if (profile != null) {
+                logProfile();
+            }
+            logTimings();
         }
 
         if (!failures.isEmpty()) {
@@ -168,6 +475,32 @@ public abstract class BaseMojo extends AbstractMojo
         return checkOnly;
     }
 
+    /**
+     * Gets the configured snapshot file, or null if the spreadsheet should be read directly.
+     */
+    protected File snapshot ()
+    {
+        return snapshot;
+    }
+
+    /**
+     * Opens the spreadsheet for reading its tables, from the snapshot if one is configured,
+     * otherwise from google docs.
+     */
+    protected TableSource openTables ()
+        throws Exception
+    {
+        return snapshot != null ? new SnapshotTables() : new Document();
+    }
+
+    /**
+     * Gets the directory in which to find properties files.
+     */
+    protected File propsDir ()
+    {
+        return propsDir;
+    }
+
     protected Set<Language> languages ()
     {
         return languageSet;
@@ -178,34 +511,311 @@ public abstract class BaseMojo extends AbstractMojo
         return languageList;
     }
 
+    /**
+     * Gets the executor to use for CPU bound work, or null if work should be done on the calling
+     * thread.
+     */
+    protected ExecutorService executor ()
+    {
+        if (executor == null && threads > 1) {
+            executor = Executors.newFixedThreadPool(threads);
+        }
+        return executor;
+    }
+
+    /**
+     * Submits tasks to the executor, which must exist.
+     */
+    protected List<Future<?>> submitAll (List<? extends Runnable> tasks)
+    {
+        List<Future<?>> futures = Lists.newArrayList();
+        for (Runnable task : tasks) {
+            futures.add(executor().submit(task));
+        }
+        return futures;
+    }
+
+    /**
+     * Waits for a task submitted with {@link #submitAll} to finish. An exception thrown by the
+     * task is returned rather than thrown, so that the caller can wait for the other tasks and
+     * report all their failures.
+     * @return the exception thrown by the task, or null if it finished normally
+     */
+    protected static Exception await (Future<?> future)
+    {
+        try {
+            Futures.getUnchecked(future);
+            return null;
+        } catch (UncheckedExecutionException ex) {
+            return ex.getCause() instanceof Exception ? (Exception)ex.getCause() : ex;
+        }
+    }
+
+    /**
+     * Writes the changes of an upload plan to the spreadsheet, a bundle at a time or several at
+     * once if more than one thread is configured. Bundles whose worksheets have changed since
+     * the plan was made are not touched. The progress is recorded in the journal, which is kept
+     * if any bundle could not be finished.
+     * @param tables tables already downloaded for some of the bundles, keyed by bundle name;
+     * the others are downloaded as needed
+     * @return the version each worksheet had after the last change written to it, keyed by the
+     * names of the bundles whose changes were all applied; null if the version is not known
+     */
+    protected Map<String, String> applyPlan (Document doc, UploadPlan plan,
+        Map<String, Table> tables)
+        throws Exception
+    {
+        SyncJournal journal = journalFile == null ? null : new SyncJournal(journalFile);
+        UploadPlan journaled = new UploadPlan();
+        List<PlanApplier> appliers = Lists.newArrayList();
+        for (UploadPlan.Bundle bundle : plan.bundles) {
+            WorksheetEntry worksheet = doc.findWorksheet(bundle.name);
+            if (!bundle.worksheetVersion.equals(doc.getVersion(worksheet))) {
+                getLog().error(String.format("Worksheet '%s' has changed since the upload was " +
+                    "planned, not applying its changes", bundle.name));
+                failures.add(new Exception(bundle.name));
+                continue;
+            }
+            getLog().info(String.format("Applying %s to '%s'", bundle.summary(), bundle.name));
+            Table table = tables.get(bundle.name);
+            appliers.add(new PlanApplier(bundle, table != null ? table : doc.loadTable(worksheet),
+                getLog(), timings, journal));
+            journaled.bundles.add(bundle);
+        }
+
+        if (journal != null) {
+            try {
+                journal.begin(journaled);
+            } catch (IOException ex) {
+                getLog().warn("Unable to start the sync journal " + journalFile +
+                    ", the upload can't be resumed if it is interrupted", ex);
+                journal.delete();
+            }
+        }
+        Map<String, String> applied = runAppliers(appliers);
+        if (journal != null) {
+            journal.end(applied.size() == appliers.size());
+        }
+        return applied;
+    }
+
+    /**
+     * Finishes writing the changes of an interrupted upload, if the journal has any. The changes
+     * recorded as written are skipped and the rest are reconciled with the worksheets as they
+     * are now, see {@link PlanApplier#reconcile}, so nothing is written twice. A bundle whose
+     * worksheet has changed since the last write recorded, whether by a translator or by a write
+     * that was cut short, is not resumed, since its plan may overwrite newer values. The journal
+     * is then removed whatever the outcome, so changes are only ever resumed once; any that are
+     * still missing are planned again by the next upload.
+     * @return the names of all the bundles in the journal
+     */
+    protected List<String> resumeJournal (Document doc)
+        throws Exception
+    {
+        List<String> resumed = Lists.newArrayList();
+        if (journalFile == null) {
+            return resumed;
+        }
+        SyncJournal journal = new SyncJournal(journalFile);
+        if (!journal.exists()) {
+            return resumed;
+        }
+        if (checkOnly) {
+            getLog().info("An interrupted upload will be resumed from " + journalFile);
+            return resumed;
+        }
+
+        UploadPlan remaining;
+        try {
+            UploadPlan plan = journal.plan();
+            for (UploadPlan.Bundle bundle : plan.bundles) {
+                resumed.add(bundle.name);
+            }
+            remaining = journal.remaining(plan);
+        } catch (IOException ex) {
+            getLog().warn("Ignoring unreadable sync journal " + journalFile, ex);
+            journal.delete();
+            return resumed;
+        }
+        List<PlanApplier> appliers = Lists.newArrayList();
+        for (UploadPlan.Bundle bundle : remaining.bundles) {
+            WorksheetEntry worksheet = doc.findWorksheet(bundle.name);
+            if (!bundle.worksheetVersion.equals(doc.getVersion(worksheet))) {
+                getLog().warn(String.format("Worksheet '%s' has changed since the interrupted " +
+                    "upload, its changes will be planned again instead of resumed", bundle.name));
+                continue;
+            }
+            Table table = doc.loadTable(worksheet);
+            UploadPlan.Bundle rest = PlanApplier.reconcile(bundle, table);
+            getLog().info(String.format("Resuming %s for '%s'", rest.summary(), bundle.name));
+            appliers.add(new PlanApplier(rest, table, getLog(), timings, null));
+        }
+        runAppliers(appliers);
+        journal.delete();
+        return resumed;
+    }
+
+    /**
+     * Runs the appliers of some bundles, one at a time or several at once if more than one
+     * thread is configured.
+     * @return the version of each worksheet after its changes were written, keyed by the names
+     * of the bundles whose changes were all applied
+     */
+    private Map<String, String> runAppliers (List<PlanApplier> appliers)
+    {
+        if (executor() == null) {
+            for (PlanApplier applier : appliers) {
+                applier.run();
+            }
+        } else {
+            List<Future<?>> futures = submitAll(appliers);
+            for (int ii = 0; ii < futures.size(); ii++) {
+                Exception ex = await(futures.get(ii));
+                if (ex != null) {
+                    PlanApplier applier = appliers.get(ii);
+                    applier.log.error("Failed to apply changes to " + applier.bundle.name, ex);
+                    applier.failures.add(ex);
+                }
+            }
+        }
+
+        Map<String, String> applied = Maps.newLinkedHashMap();
+        for (PlanApplier applier : appliers) {
+            applier.log.flush();
+            failures.addAll(applier.failures);
+            if (applier.failures.isEmpty()) {
+                applied.put(applier.bundle.name, applier.version);
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Gets the timings of this execution, to which phases should be added as they are run.
+     */
+    protected Timings timings ()
+    {
+        return timings;
+    }
+
+    /**
+     * Logs a summary of the timings and writes them to the timings file.
+     */
+    protected void logTimings ()
+    {
+        timings.report(getLog());
+        if (timingsFile == null) {
+            return;
+        }
+        try {
+            timings.write(timingsFile);
+        } catch (IOException ex) {
+            getLog().warn("Unable to write timings to " + timingsFile, ex);
+        }
+    }
+
+    /**
+     * Logs the rule profile, slowest scopes and rules first.
+     */
+    protected void logProfile ()
+    {
+        getLog().info("Rule profile:");
+        for (Rules.Profile.Counters counters : profile.report()) {
+            getLog().info("  " + counters);
+        }
+    }
+
     protected Folder openFolder ()
         throws Exception
     {
-        getLog().info("Opening folder '" + folderId + "'");
-        return Folder.open("gxlate-0.1", username, password, folderId);
+        if ((folderId == null && spreadsheetKey == null) || username == null || password == null) {
+            throw new MojoExecutionException("gxlate.folderId or gxlate.spreadsheetKey, " +
+                "google.username and google.password are required");
+        }
+        return docSession().getFolder(new Callable<Folder>() {
+            @Override public Folder call ()
+                throws Exception
+            {
+                getLog().info("Opening folder '" + folderId + "'");
+                Timings.Timer timer = timings.start(Timings.Phase.AUTH, null);
+                try {
+                    TokenCache tokens = tokenCache == null || tokenHours <= 0 ? null :
+                        new TokenCache(tokenCache, TimeUnit.HOURS.toMillis(tokenHours));
+                    return Folder.open("gxlate-0.1", username, password, folderId, tokens);
+                } finally {
+                    timer.stop();
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the google docs state shared with the other executions of the build that use the
+     * same account and folder. Nothing is shared if the build runs modules in parallel, since
+     * the shared tables are not safe to use from concurrent executions.
+     */
+    protected DocSession docSession ()
+    {
+        if (docSession == null) {
+            docSession = DocSession.get(isParallel(mavenSession) ? null : mavenSession,
+                username, password, folderId);
+        }
+        return docSession;
+    }
+
+    /**
+     * Checks if the given build runs modules in parallel. Older versions of maven, which can't,
+     * lack the method.
+     */
+    protected static boolean isParallel (MavenSession session)
+    {
+        if (session == null) {
+            return false;
+        }
+        try {
+            return Boolean.TRUE.equals(session.getClass().getMethod("isParallel").invoke(session));
+        } catch (Exception ex) {
+            return false;
+        }
     }
 
     protected DefaultTranslator init (DefaultTranslator translator)
     {
-        return translator.setCheckOnly(checkOnly()).setLog(getLog());
+        // tables loaded from a snapshot can't record the import, so just report
+        return translator.setCheckOnly(checkOnly() || snapshot != null).setLog(getLog());
     }
 
-    protected Iterable<Row> getFilteredRows (PropsFile source)
+    /**
+     * Gets the ignore expressions of the configured rules that apply to the given bundle, in
+     * order.
+     */
+    protected List<String> getIgnoredIds (String base)
     {
-        Domain domain = new Domain.Simple();
-        String name = source.getFile().getName();
-        String base = Bundle.baseName(name);
-        Domain.RuleSet ruleSet = new Domain.RuleSet();
-        List<Rules.Rule> rrules = Lists.newArrayList();
+        List<String> ignored = Lists.newArrayList();
         if (rules != null) {
             for (SimpleRule rule : rules) {
                 if (rule.file.equals(base)) {
-                    rrules.add(Rules.ID.matches(rule.ignore).ignore());
+                    ignored.add(rule.ignore);
                 }
             }
         }
-        return ruleSet.add(domain, name, "", rrules.toArray(new Rules.Rule[]{})).
-                get(domain, source, 0).generate();
+        return ignored;
+    }
+
+    protected List<Row> getFilteredRows (PropsFile source)
+    {
+        String name = source.getFile().getName();
+        List<Rules.Rule> rrules = ruleTable.get(Bundle.baseName(name));
+        Timings.Timer timer = timings.start(Timings.Phase.RULES, Bundle.baseName(name));
+        try {
+            Domain.RuleSet.RowGenerator generator = new Domain.RuleSet().setProfile(profile).add(
+                DOMAIN, name, "", rrules.toArray(new Rules.Rule[]{})).get(DOMAIN, source, 0);
+            // generate all the rows up front so that the time is counted here
+            return executor() == null ? Lists.newArrayList(generator.generate()) :
+                generator.generate(executor());
+        } finally {
+            timer.stop();
+        }
     }
 
     /**
@@ -215,7 +825,12 @@ public abstract class BaseMojo extends AbstractMojo
         throws IOException
     {
         getLog().info("Finding English properties files");
-        return findAllProps(propsDir, Lists.<File>newArrayList());
+        Timings.Timer timer = timings.start(Timings.Phase.DISCOVERY, null);
+        try {
+            return findAllProps(propsDir, Lists.<File>newArrayList());
+        } finally {
+            timer.stop();
+        }
     }
 
     /**
@@ -225,14 +840,38 @@ public abstract class BaseMojo extends AbstractMojo
         throws IOException
     {
         getLog().info("Loading English properties files");
+        List<File> files;
+        Timings.Timer timer = timings.start(Timings.Phase.DISCOVERY, null);
+        try {
+            files = findAllProps(propsDir, Lists.<File>newArrayList());
+        } finally {
+            timer.stop();
+        }
         List<PropsFile> result = Lists.newArrayList();
-        for (File file : findAllProps(propsDir, Lists.<File>newArrayList())) {
-            result.add(new PropsFile(file));
+        for (File file : files) {
+            result.add(loadProps(file));
         }
         return result;
     }
 
-    private static List<File> findAllProps (File dir, List<File> files)
+    /**
+     * Loads a props file, timing it as part of its bundle.
+     */
+    protected PropsFile loadProps (File file)
+        throws IOException
+    {
+        Timings.Timer timer = timings.start(Timings.Phase.PARSE, Bundle.baseName(file));
+        try {
+            return new PropsFile(file);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Adds the English props files in a directory and its subdirectories to a list.
+     */
+    protected static List<File> findAllProps (File dir, List<File> files)
         throws IOException
     {
         File[] listing = dir.listFiles();
@@ -0,0 +1,192 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A log that holds on to messages until they are flushed to another log. Used to keep the output
+ * of a task running in parallel with others together.
+ */
+public class BufferedLog
+    implements Log
+{
+    /**
+     * Creates a new buffered log that will flush to the given target. The levels enabled are the
+     * same as the target's.
+     */
+    public BufferedLog (Log target)
+    {
+        _target = target;
+    }
+
+    /**
+     * Writes all buffered messages to the target log, in order, and clears the buffer.
+     */
+    public synchronized void flush ()
+    {
+        for (Message msg : _messages) {
+            msg.level.log(_target, msg.content, msg.error);
+        }
+        _messages.clear();
+    }
+
+    @Override public boolean isDebugEnabled ()
+    {
+        return _target.isDebugEnabled();
+    }
+
+    @Override public void debug (CharSequence content)
+    {
+        add(Level.DEBUG, content, null);
+    }
+
+    @Override public void debug (CharSequence content, Throwable error)
+    {
+        add(Level.DEBUG, content, error);
+    }
+
+    @Override public void debug (Throwable error)
+    {
+        add(Level.DEBUG, null, error);
+    }
+
+    @Override public boolean isInfoEnabled ()
+    {
+        return _target.isInfoEnabled();
+    }
+
+    @Override public void info (CharSequence content)
+    {
+        add(Level.INFO, content, null);
+    }
+
+    @Override public void info (CharSequence content, Throwable error)
+    {
+        add(Level.INFO, content, error);
+    }
+
+    @Override public void info (Throwable error)
+    {
+        add(Level.INFO, null, error);
+    }
+
+    @Override public boolean isWarnEnabled ()
+    {
+        return _target.isWarnEnabled();
+    }
+
+    @Override public void warn (CharSequence content)
+    {
+        add(Level.WARN, content, null);
+    }
+
+    @Override public void warn (CharSequence content, Throwable error)
+    {
+        add(Level.WARN, content, error);
+    }
+
+    @Override public void warn (Throwable error)
+    {
+        add(Level.WARN, null, error);
+    }
+
+    @Override public boolean isErrorEnabled ()
+    {
+        return _target.isErrorEnabled();
+    }
+
+    @Override public void error (CharSequence content)
+    {
+        add(Level.ERROR, content, null);
+    }
+
+    @Override public void error (CharSequence content, Throwable error)
+    {
+        add(Level.ERROR, content, error);
+    }
+
+    @Override public void error (Throwable error)
+    {
+        add(Level.ERROR, null, error);
+    }
+
+    protected synchronized void add (Level level, CharSequence content, Throwable error)
+    {
+        _messages.add(new Message(level, content, error));
+    }
+
+    protected enum Level
+    {
+        DEBUG {
+            @Override void log (Log log, CharSequence content, Throwable error) {
+                if (content == null) {
+                    log.debug(error);
+                } else if (error == null) {
+                    log.debug(content);
+                } else {
+                    log.debug(content, error);
+                }
+            }
+        },
+        INFO {
+            @Override void log (Log log, CharSequence content, Throwable error) {
+                if (content == null) {
+                    log.info(error);
+                } else if (error == null) {
+                    log.info(content);
+                } else {
+                    log.info(content, error);
+                }
+            }
+        },
+        WARN {
+            @Override void log (Log log, CharSequence content, Throwable error) {
+                if (content == null) {
+                    log.warn(error);
+                } else if (error == null) {
+                    log.warn(content);
+                } else {
+                    log.warn(content, error);
+                }
+            }
+        },
+        ERROR {
+            @Override void log (Log log, CharSequence content, Throwable error) {
+                if (content == null) {
+                    log.error(error);
+                } else if (error == null) {
+                    log.error(content);
+                } else {
+                    log.error(content, error);
+                }
+            }
+        };
+
+        abstract void log (Log log, CharSequence content, Throwable error);
+    }
+
+    protected static class Message
+    {
+        public final Level level;
+        public final CharSequence content;
+        public final Throwable error;
+
+        public Message (Level level, CharSequence content, Throwable error)
+        {
+            this.level = level;
+            this.content = content;
+            this.error = error;
+        }
+    }
+
+    protected final Log _target;
+    protected final List<Message> _messages = Lists.newArrayList();
+}
@@ -0,0 +1,146 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+
+import org.apache.maven.plugin.logging.Log;
+
+import com.threerings.tools.gxlate.util.FileUtil;
+
+/**
+ * Records the state of each bundle as of its last successful sync so that later runs can skip
+ * bundles for which neither the source file, the configuration nor the worksheet has changed.
+ */
+public class BuildState
+{
+    /**
+     * The synced state of one bundle.
+     */
+    public static class Bundle
+    {
+        /** Hash of the source properties file. */
+        public final String sourceHash;
+
+        /** Hash of the rules and other configuration affecting the bundle's rows. */
+        public final String configHash;
+
+        /** Version of the worksheet after the sync. */
+        public final String worksheetVersion;
+
+        public Bundle (String sourceHash, String configHash, String worksheetVersion)
+        {
+            this.sourceHash = sourceHash;
+            this.configHash = configHash;
+            this.worksheetVersion = worksheetVersion;
+        }
+
+        @Override public boolean equals (Object o)
+        {
+            if (!(o instanceof Bundle)) {
+                return false;
+            }
+            Bundle other = (Bundle)o;
+            return sourceHash.equals(other.sourceHash) && configHash.equals(other.configHash) &&
+                worksheetVersion.equals(other.worksheetVersion);
+        }
+
+        @Override public int hashCode ()
+        {
+            return Objects.hashCode(sourceHash, configHash, worksheetVersion);
+        }
+    }
+
+    /**
+     * Loads the state from the given file. If the file does not exist, the state is empty. The
+     * state is only a cache, so a file that is cut short, corrupt or of another version is
+     * warned about and also gives an empty state, which just means every bundle is checked.
+     */
+    public static BuildState load (File file, Log log)
+    {
+        BuildState state = new BuildState(file);
+        if (!file.exists()) {
+            return state;
+        }
+        try {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != VERSION) {
+                    log.warn("Ignoring build state of another version: " + file);
+                    return state;
+                }
+                for (int ii = in.readInt(); ii > 0; ii--) {
+                    String key = in.readUTF();
+                    state._bundles.put(key, new Bundle(in.readUTF(), in.readUTF(), in.readUTF()));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            log.warn("Ignoring unreadable build state " + file, ex);
+            state._bundles.clear();
+        }
+        return state;
+    }
+
+    /**
+     * Gets the last synced state of the bundle with the given key, or null if there is none.
+     */
+    public Bundle get (String key)
+    {
+        return _bundles.get(key);
+    }
+
+    /**
+     * Records the synced state of the bundle with the given key.
+     */
+    public void put (String key, Bundle bundle)
+    {
+        _bundles.put(key, bundle);
+    }
+
+    /**
+     * Writes the state back to the file it was loaded from, replacing it in one go so that an
+     * interrupted build never leaves it half written.
+     */
+    public void save ()
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(VERSION);
+        out.writeInt(_bundles.size());
+        for (Map.Entry<String, Bundle> entry : _bundles.entrySet()) {
+            Bundle bundle = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeUTF(bundle.sourceHash);
+            out.writeUTF(bundle.configHash);
+            out.writeUTF(bundle.worksheetVersion);
+        }
+        FileUtil.replace(_file, bytes.toByteArray(), false);
+    }
+
+    protected BuildState (File file)
+    {
+        _file = file;
+    }
+
+    protected final File _file;
+    protected final Map<String, Bundle> _bundles = Maps.newTreeMap();
+
+    protected static final int VERSION = 1;
+}
@@ -9,7 +9,7 @@ import java.io.File;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import com.google.gdata.util.common.base.Objects;
+import com.google.common.base.Strings;
 
 public class Bundle
 {
@@ -21,7 +21,7 @@ public class Bundle
         if (!m.matches()) {
             return false;
         }
-        String lang = Objects.firstNonNull(m.group(3), "");
+        String lang = Strings.nullToEmpty(m.group(3));
         return lang.isEmpty() || lang.equalsIgnoreCase(Language.EN.code());
     }
 
@@ -1,14 +1,10 @@
 package com.threerings.tools.gxlate;
 
-import java.net.URL;
-
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
 import com.google.gdata.client.spreadsheet.CellQuery;
 import com.google.gdata.client.spreadsheet.SpreadsheetService;
-import com.google.gdata.data.ILink;
-import com.google.gdata.data.Link;
 import com.google.gdata.data.PlainTextConstruct;
 import com.google.gdata.data.spreadsheet.CellEntry;
 import com.google.gdata.data.spreadsheet.CellFeed;
@@ -46,7 +42,7 @@ public class CreateTemplateMojo extends BaseMojo
     private void deleteTab (Document doc)
         throws Exception
     {
-        for (WorksheetEntry worksheet : doc.folder.getWorksheets(doc.entry)) {
+        for (WorksheetEntry worksheet : doc.folder.getWorksheets(doc.key)) {
             if (worksheet.getTitle().getPlainText().equals(templateName)) {
                 getLog().info("Deleting tab " + templateName);
                 worksheet.delete();
@@ -61,9 +57,6 @@ public class CreateTemplateMojo extends BaseMojo
     {
         getLog().info("Creating tab " + templateName);
         SpreadsheetService service = doc.folder.getService();
-        ILink link = doc.entry.getLink(
-            com.google.gdata.data.spreadsheet.Namespaces.WORKSHEETS_LINK_REL,
-            Link.Type.ATOM);
 
         // Create a local representation of the new worksheet.
         WorksheetEntry worksheet = new WorksheetEntry();
@@ -71,7 +64,7 @@ public class CreateTemplateMojo extends BaseMojo
         worksheet.setColCount(colCount());
         worksheet.setRowCount(100);
 
-        service.insert(new URL(link.getHref()), worksheet);
+        service.insert(doc.folder.getWorksheetsUrl(doc.key), worksheet);
     }
 
     private int colCount ()
@@ -84,7 +77,7 @@ public class CreateTemplateMojo extends BaseMojo
     {
         getLog().info("Adding header row for " + templateName);
         WorksheetEntry worksheet = requireEntry(
-            doc.folder.getWorksheets(doc.entry), "worksheet", templateName);
+            doc.folder.getWorksheets(doc.key), "worksheet", templateName);
 
         CellQuery query = new CellQuery(worksheet.getCellFeedUrl());
         query.setMinimumRow(1);
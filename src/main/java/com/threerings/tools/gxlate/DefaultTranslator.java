@@ -5,12 +5,15 @@
 
 package com.threerings.tools.gxlate;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.SortedSet;
 
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import org.apache.maven.plugin.logging.Log;
@@ -26,27 +29,112 @@ import static java.lang.String.format;
 
 public class DefaultTranslator extends Translator
 {
-    public static String checkBraces (String source, Set<Integer> braces)
+    /**
+     * The parameter indices used in a string, such as the 0 and 1 in "{0} has {1} gold". Indices
+     * from 0 to 63 are kept in a bit mask, so scanning and comparing typical strings allocates
+     * nothing. Instances may be reused for any number of scans.
+     */
+    public static class BraceSet
     {
-        for (int pos = 0;;pos++) {
-            int open = source.indexOf('{', pos);
-            if (open == -1) {
-                break;
+        /**
+         * Replaces the contents of this set with the parameter indices in the given string.
+         * @return null if the braces are all valid, otherwise a description of the problem
+         */
+        public String scan (String source)
+        {
+            _mask = 0;
+            if (_others != null) {
+                _others.clear();
             }
-            pos = source.indexOf('}', open);
-            if (pos == -1) {
-                return "has unclosed brace at character " + open;
+            for (int pos = 0;;pos++) {
+                int open = source.indexOf('{', pos);
+                if (open == -1) {
+                    break;
+                }
+                pos = source.indexOf('}', open);
+                if (pos == -1) {
+                    return "has unclosed brace at character " + open;
+                }
+                long param = parseIndex(source, open + 1, pos);
+                if (param == INVALID) {
+                    return "has invalid brace parameter '" + source.substring(open + 1, pos) +
+                        "' at character " + open;
+                }
+                if (param >= 0 && param < 64) {
+                    _mask |= 1L << param;
+                } else {
+                    if (_others == null) {
+                        _others = Sets.newTreeSet();
+                    }
+                    _others.add((int)param);
+                }
             }
-            String param = source.substring(open + 1, pos);
-            Integer iparam;
-            try {
-                iparam = Integer.valueOf(param);
-            } catch (NumberFormatException ex) {
-                return "has invalid brace parameter '" + param + "' at character " + open;
+            return null;
+        }
+
+        /**
+         * Lists the parameters in this set that are not in the other.
+         * @return the comma separated indices, or null if there are none
+         */
+        public String difference (BraceSet other)
+        {
+            long mask = _mask & ~other._mask;
+            boolean others = _others != null && !_others.isEmpty() &&
+                (other._others == null || !other._others.containsAll(_others));
+            if (mask == 0 && !others) {
+                return null;
+            }
+
+            List<Integer> diff = Lists.newArrayList();
+            if (_others != null) {
+                for (int param : _others) {
+                    if (other._others == null || !other._others.contains(param)) {
+                        diff.add(param);
+                    }
+                }
+            }
+            for (int param = 0; param < 64; param++) {
+                if ((mask & (1L << param)) != 0) {
+                    diff.add(param);
+                }
             }
-            braces.add(iparam);
+            Collections.sort(diff);
+            return Joiner.on(",").join(diff);
         }
-        return null;
+
+        /**
+         * Parses a decimal integer like {@link Integer#parseInt}, without allocating. As with
+         * that, a leading sign of either kind and digits of any script are accepted.
+         * @return the integer, or {@link #INVALID} if the text is not one
+         */
+        protected static long parseIndex (String source, int start, int end)
+        {
+            boolean negative = start < end && source.charAt(start) == '-';
+            if (negative || (start < end && source.charAt(start) == '+')) {
+                start++;
+            }
+            if (start == end) {
+                return INVALID;
+            }
+            long value = 0;
+            for (int ii = start; ii < end; ii++) {
+                int digit = Character.digit(source.charAt(ii), 10);
+                if (digit < 0) {
+                    return INVALID;
+                }
+                value = value * 10 + digit;
+                if (value > (long)Integer.MAX_VALUE + 1) {
+                    return INVALID;
+                }
+            }
+            value = negative ? -value : value;
+            return value > Integer.MAX_VALUE ? INVALID : value;
+        }
+
+        protected long _mask;
+        protected SortedSet<Integer> _others;
+
+        protected static final long INVALID = Long.MIN_VALUE;
     }
 
     public DefaultTranslator (Table table, Index index,
@@ -68,6 +156,16 @@ public class DefaultTranslator extends Translator
         return this;
     }
 
+    /**
+     * Sets the timings to which updates of the spreadsheet are added, for the given bundle.
+     */
+    public DefaultTranslator setTimings (Timings timings, String bundle)
+    {
+        _timings = timings;
+        _bundle = bundle;
+        return this;
+    }
+
     public DefaultTranslator setGwt (boolean gwt)
     {
         _gwt = gwt;
@@ -161,11 +259,17 @@ public class DefaultTranslator extends Translator
                     _log.info(format("Found new translation for %s", key));
                 } else {
                     _log.info(format("Found new translation for %s, updating", key));
+                    Timings.Timer timer = _timings == null ? null :
+                        _timings.start(Timings.Phase.NETWORK_WRITE, _bundle);
                     try {
                         _table.updateCell(row, lastImportedHeader, Table.googleNow());
                     } catch (Exception e) {
                         _error.apply(format("Unable to update the %s for row %d",
                             lastImportedHeader, row.getNum()));
+                    } finally {
+                        if (timer != null) {
+                            timer.stop();
+                        }
                     }
                 }
             }
@@ -190,28 +294,26 @@ public class DefaultTranslator extends Translator
 
     public String validate (String english, String foreign)
     {
-        Set<Integer> englishBraces = Sets.newHashSet();
-        String error = checkBraces(english, englishBraces);
+        String error = _englishBraces.scan(english);
         if (error != null) {
             return error;
         }
 
-        Set<Integer> foreignBraces = Sets.newHashSet();
-        error = checkBraces(foreign, foreignBraces);
+        error = _foreignBraces.scan(foreign);
         if (error != null) {
             _errors++;
             return error;
         }
 
-        Set<Integer> diff = Sets.difference(englishBraces, foreignBraces);
-        if (diff.size() > 0) {
+        String diff = _englishBraces.difference(_foreignBraces);
+        if (diff != null) {
             _errors++;
-            return "is missing parameter(s): " + Joiner.on(",").join(diff);
+            return "is missing parameter(s): " + diff;
         }
-        diff = Sets.difference(foreignBraces, englishBraces);
-        if (diff.size() > 0) {
+        diff = _foreignBraces.difference(_englishBraces);
+        if (diff != null) {
             _errors++;
-            return "has extra parameter(s): " + Joiner.on(",").join(diff);
+            return "has extra parameter(s): " + diff;
         }
 
         return null;
@@ -255,8 +357,12 @@ public class DefaultTranslator extends Translator
     protected boolean _gwt;
     protected boolean _checkOnly;
     protected Log _log;
+    protected Timings _timings;
+    protected String _bundle;
     protected String _placeholderPrefix;
     protected int _errors;
     protected int _placeholders;
     protected int _retained;
+    protected final BraceSet _englishBraces = new BraceSet();
+    protected final BraceSet _foreignBraces = new BraceSet();
 }
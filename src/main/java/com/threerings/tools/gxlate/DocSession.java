@@ -0,0 +1,157 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.gdata.data.spreadsheet.WorksheetEntry;
+
+import com.threerings.tools.gxlate.spreadsheet.Folder;
+import com.threerings.tools.gxlate.spreadsheet.Index;
+import com.threerings.tools.gxlate.spreadsheet.Table;
+
+/**
+ * Google docs state shared by the goals executed in one build, so that the modules of a reactor
+ * build using the same folder open it, list its worksheets and download each table only once.
+ * Sessions are keyed by the account and folder, and forgotten when the next build starts, so a
+ * JVM running several builds never sees stale data from an earlier one.
+ *
+ * <p>Tables are handed out to any number of executions. A table is dropped, along with its
+ * indices and the worksheet listings, as soon as it is written to, since neither reflects the
+ * spreadsheet as others would download it any more; the execution writing it keeps using it and
+ * later ones download it again. Executions must therefore not run at the same time, see
+ * {@link #get}. Changes are not expected from elsewhere during a build.</p>
+ */
+public class DocSession
+{
+    /**
+     * Gets the session for the given account and folder in the given build, creating it if this
+     * is the first execution to use them. Sessions of any other build are discarded.
+     * @param build the object identifying the build, normally the maven session, or null for a
+     * new session that is not shared, as is needed when executions may run concurrently
+     */
+    public static synchronized DocSession get (
+        Object build, String user, String password, String folderId)
+    {
+        if (build == null) {
+            return new DocSession();
+        }
+        if (_build == null || _build.get() != build) {
+            _build = new WeakReference<Object>(build);
+            _sessions.clear();
+        }
+        String key = Hashing.sha1().hashString(
+            user + "\n" + password + "\n" + folderId, Charsets.UTF_8).toString();
+        DocSession session = _sessions.get(key);
+        if (session == null) {
+            _sessions.put(key, session = new DocSession());
+        }
+        return session;
+    }
+
+    /**
+     * Gets the folder, opening it if no earlier execution has.
+     */
+    public synchronized Folder getFolder (Callable<Folder> opener)
+        throws Exception
+    {
+        if (_folder == null) {
+            _folder = opener.call();
+        }
+        return _folder;
+    }
+
+    /**
+     * Gets the worksheets of a document, listing them if no earlier execution has.
+     * @param docId the id of the spreadsheet document
+     */
+    public synchronized List<WorksheetEntry> getWorksheets (
+        String docId, Callable<List<WorksheetEntry>> lister)
+        throws Exception
+    {
+        List<WorksheetEntry> worksheets = _worksheets.get(docId);
+        if (worksheets == null) {
+            _worksheets.put(docId, worksheets = lister.call());
+        }
+        return worksheets;
+    }
+
+    /**
+     * Gets a table, downloading it if no earlier execution has. A table downloaded from the
+     * cell feed serves requests for an exported one, but not the other way around.
+     * @param docId the id of the spreadsheet document
+     * @param title the name of the worksheet
+     * @param export whether the table is only to be read, so an exported one will do
+     */
+    public synchronized Table getTable (
+        String docId, String title, boolean export, Callable<Table> loader)
+        throws Exception
+    {
+        String cellsKey = docId + "/" + title, exportKey = cellsKey + "?export";
+        Table table = _tables.get(cellsKey);
+        if (table == null && export) {
+            table = _tables.get(exportKey);
+        }
+        if (table == null) {
+            _tables.put(export ? exportKey : cellsKey, table = loader.call());
+            final Table loaded = table;
+            loaded.setModifiedListener(new Runnable() {
+                @Override public void run () {
+                    drop(loaded);
+                }
+            });
+        }
+        return table;
+    }
+
+    /**
+     * Gets the index of a table by the given column, building it the first time.
+     */
+    public synchronized Index getIndex (Table table, String column)
+        throws Index.IndexError
+    {
+        Map<String, Index> indices = _indices.get(table);
+        if (indices == null) {
+            _indices.put(table, indices = Maps.newHashMap());
+        }
+        Index index = indices.get(column);
+        if (index == null) {
+            indices.put(column, index = new Index(table, column));
+        }
+        return index;
+    }
+
+    /**
+     * Stops sharing a table that has been written to, along with its indices and the worksheet
+     * listings, whose row counts and versions may have changed.
+     */
+    protected synchronized void drop (Table table)
+    {
+        if (_tables.values().removeAll(Collections.singleton(table))) {
+            _indices.remove(table);
+            _worksheets.clear();
+        }
+    }
+
+    protected Folder _folder;
+    protected final Map<String, List<WorksheetEntry>> _worksheets = Maps.newHashMap();
+    protected final Map<String, Table> _tables = Maps.newHashMap();
+
+    /** Indices are dropped along with their tables. */
+    protected final Map<Table, Map<String, Index>> _indices =
+        new WeakHashMap<Table, Map<String, Index>>();
+
+    protected static WeakReference<Object> _build;
+    protected static final Map<String, DocSession> _sessions = Maps.newHashMap();
+}
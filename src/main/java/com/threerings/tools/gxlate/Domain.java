@@ -7,11 +7,15 @@ package com.threerings.tools.gxlate;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
 
 import com.threerings.tools.gxlate.props.PropsFile;
 import com.threerings.tools.gxlate.props.PropsFile.Entry;
@@ -71,6 +75,15 @@ public interface Domain
             return this;
         }
 
+        /**
+         * Sets the profile in which the contexts of new row generators will record rule timings.
+         */
+        public RuleSet setProfile (Rules.Profile profile)
+        {
+            _profile = profile;
+            return this;
+        }
+
         /**
          * Adds the rules to be applied for the given values.
          * @param domain the domain that the rules apply to
@@ -142,13 +155,65 @@ public interface Domain
                     });
             }
 
+            /**
+             * Generates the rows using the given executor. The named sets of the rules are first
+             * populated from all entries, in parallel, then the rows are generated in parallel.
+             * The sets hold exactly what the sequential {@link #generate()} would put in them, but
+             * a rule after the inserting ones that tests a set sees the insertions of all entries,
+             * including later ones, where {@link #generate()} only has those of earlier entries.
+             * If a rule tests a set before the last rule that inserts, the sets cannot be
+             * populated up front and the rows are generated sequentially instead. See
+             * {@link RuleChain#insert}.
+             * @return the rows, in the same order as the properties
+             */
+            public List<Row> generate (ExecutorService executor)
+            {
+                final RuleChain chain = _context.getChain(_scope);
+                if (!chain.canInsertFirst()) {
+                    return Lists.newArrayList(generate());
+                }
+                final List<Entry> entries = Lists.newArrayList(_props.properties());
+                List<Future<?>> inserts = Lists.newArrayList();
+                for (final List<Entry> batch : Lists.partition(entries, BATCH_SIZE)) {
+                    inserts.add(executor.submit(new Runnable() {
+                        @Override public void run () {
+                            for (Entry entry : batch) {
+                                chain.insert(entry, _context);
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> future : inserts) {
+                    Futures.getUnchecked(future);
+                }
+
+                List<Future<List<Row>>> batches = Lists.newArrayList();
+                for (final List<Entry> batch : Lists.partition(entries, BATCH_SIZE)) {
+                    batches.add(executor.submit(new Callable<List<Row>>() {
+                        @Override public List<Row> call () {
+                            List<Row> rows = Lists.newArrayListWithCapacity(batch.size());
+                            for (Entry entry : batch) {
+                                rows.add(generate(entry));
+                            }
+                            return rows;
+                        }
+                    }));
+                }
+                List<Row> rows = Lists.newArrayListWithCapacity(entries.size());
+                for (Future<List<Row>> future : batches) {
+                    rows.addAll(Futures.getUnchecked(future));
+                }
+                return rows;
+            }
+
             /**
              * Using an entry from a properties file, creates a new field map for inserting into a
              * spreadsheet.
              */
             private Row generate (PropsFile.Entry entry)
             {
-                Map<Field, String> fields = Maps.newHashMap();
+                // the row keeps the map, but an enum map is just an array of values
+                Map<Field, String> fields = Maps.newEnumMap(Field.class);
                 Rules.Status status = _scope.apply(entry, fields, _context);
                 fields.put(Field.LAST_UPDATED, Table.googleNow());
                 fields.put(Field.ID, entry.getId());
@@ -166,7 +231,7 @@ public interface Domain
                 _domain = domain;
                 _scope = scope;
                 _props = props;
-                _context = new Rules.Context(_globalRules, flags);
+                _context = new Rules.Context(_globalRules, flags).setProfile(_profile);
             }
 
             private final Domain _domain;
@@ -175,7 +240,11 @@ public interface Domain
             private final Rules.Context _context;
         }
 
+        /** The number of entries handled by each task during parallel generation. */
+        protected static final int BATCH_SIZE = 256;
+
         private final Map<Domain, Map<String, Rules.Scope>> _domains = Maps.newHashMap();
         private final List<Rules.Rule> _globalRules = Lists.newArrayList();
+        private Rules.Profile _profile;
     }
 }
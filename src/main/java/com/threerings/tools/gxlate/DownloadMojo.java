@@ -7,9 +7,12 @@ package com.threerings.tools.gxlate;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import org.apache.maven.plugins.annotations.Mojo;
@@ -28,55 +31,73 @@ public class DownloadMojo extends BaseMojo
     protected void run ()
         throws Exception
     {
-        Document doc = new Document();
-        int placeholders = 0, errors = 0, retained = 0;
+        TableSource tables = openTables();
+        int placeholders = 0, errors = 0, retained = 0, written = 0, unchanged = 0;
         for (PropsFile source : loadAllProps()) {
-            Table table = doc.loadTable(Bundle.baseName(source.getFile()));
-            Index index = new Index(table, Field.ID.getColumnName());
+            String base = Bundle.baseName(source.getFile());
+            Table table = tables.loadTable(base);
+            Index index;
+            Timings.Timer timer = timings().start(Timings.Phase.INDEX, base);
+            try {
+                index = docSession().getIndex(table, Field.ID.getColumnName());
+            } finally {
+                timer.stop();
+            }
+
+            // the rows and their keys do not depend on the language, generate them just once
+            Map<Index.Key, Domain.Row> generatedFields = Maps.newHashMap();
+            for (Domain.Row row : getFilteredRows(source)) {
+                generatedFields.put(index.key(
+                    ImmutableMap.of(Field.ID.getColumnName(), row.fields.id())), row);
+            }
+
+            // each language only reads the shared data, so they may be written in parallel
+            List<LanguageWriter> writers = Lists.newArrayList();
             for (Language language : languages()) {
-                Map<Index.Key, Domain.Row> generatedFields = Maps.newHashMap();
-                for (Domain.Row row : getFilteredRows(source)) {
-                    generatedFields.put(index.key(
-                        row.fields.toStringMap(Collections.singleton(language))), row);
+                writers.add(new LanguageWriter(source, table, index, generatedFields, language));
+            }
+            if (executor() == null) {
+                // render all the languages in one pass over the source lines
+                Map<LanguageWriter, DefaultTranslator> translators = Maps.newLinkedHashMap();
+                for (LanguageWriter writer : writers) {
+                    translators.put(writer, writer.prepare());
                 }
-
-                File dest = Bundle.setLanguage(source.getFile(), language);
-                PropsFile existingProps = null;
-                if (dest.exists()) {
-                    try {
-                        existingProps = new PropsFile(dest);
-                    } catch (IOException ex) {
-                        getLog().error("Could not load existing props: " + dest);
-                        failures.add(ex);
+                for (Map.Entry<LanguageWriter, byte[]> entry :
+                        render(source, translators).entrySet()) {
+                    entry.getKey().finish(entry.getValue());
+                }
+            } else {
+                List<Future<?>> futures = submitAll(writers);
+                for (int ii = 0; ii < futures.size(); ii++) {
+                    Exception ex = await(futures.get(ii));
+                    if (ex != null) {
+                        LanguageWriter writer = writers.get(ii);
+                        writer.log.error("Failed to write " + writer.language + " file", ex);
+                        writer.failures.add(ex);
                     }
                 }
+            }
 
-                getLog().info((dest.exists() ? "Updating" : "Creating") + " file: " + dest);
-                DefaultTranslator translator = new DefaultTranslator(
-                    table, index, generatedFields, language, existingProps);
-                try {
-                    source.write(dest, init(translator));
-                } catch (IOException ex) {
-                    getLog().error("Unable to write language file: " + dest);
-                    failures.add(ex);
-                } finally {
-                    placeholders += translator.placeholders();
-                    errors += translator.errors();
-                    retained += translator.retained();
-                    if (translator.placeholders() > 0) {
-                        getLog().info(String.format("Used %d placeholder(s) for %s.",
-                            translator.placeholders(), language));
-                    }
-                    if (translator.retained() > 0) {
-                        getLog().info(String.format("Retained %d string(s) for %s.",
-                            translator.retained(), language));
-                    }
+            for (LanguageWriter writer : writers) {
+                writer.log.flush();
+                failures.addAll(writer.failures);
+                if (writer.translator == null) {
+                    continue;
+                }
+                placeholders += writer.translator.placeholders();
+                errors += writer.translator.errors();
+                retained += writer.translator.retained();
+                if (writer.written) {
+                    written++;
+                } else if (writer.failures.isEmpty()) {
+                    unchanged++;
                 }
             }
         }
         if (errors > 0) {
             failures.add(new Exception("Translation content"));
         }
+        getLog().info(String.format("Files written: %d, unchanged: %d.", written, unchanged));
         String placeholdersMessage = String.format("Placeholders used: %d.", placeholders);
         if (placeholders > 0) {
             getLog().warn(placeholdersMessage);
@@ -87,4 +108,112 @@ public class DownloadMojo extends BaseMojo
             getLog().warn(String.format("Old strings retained: %d.", retained));
         }
     }
+
+    /**
+     * Renders the translated files, timing it as the diff of the bundle.
+     */
+    protected <K> Map<K, byte[]> render (PropsFile source,
+        Map<K, ? extends DefaultTranslator> translators)
+        throws IOException
+    {
+        Timings.Timer timer = timings().start(
+            Timings.Phase.DIFF, Bundle.baseName(source.getFile()));
+        try {
+            return source.render(translators);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Writes the translated file for one language of a bundle. Log messages and failures are
+     * kept with the writer until it is finished, so that they can be reported in order.
+     */
+    protected class LanguageWriter
+        implements Runnable
+    {
+        public final Language language;
+        public final BufferedLog log = new BufferedLog(getLog());
+        public final List<Exception> failures = Lists.newArrayList();
+        public DefaultTranslator translator;
+        public boolean written;
+
+        public LanguageWriter (PropsFile source, Table table, Index index,
+            Map<Index.Key, Domain.Row> generatedFields, Language language)
+        {
+            this.language = language;
+            _source = source;
+            _table = table;
+            _index = index;
+            _generatedFields = generatedFields;
+        }
+
+        /**
+         * Loads the existing translations, if any, and creates the translator for the language.
+         */
+        public DefaultTranslator prepare ()
+        {
+            _dest = Bundle.setLanguage(_source.getFile(), language);
+            PropsFile existingProps = null;
+            if (_dest.exists()) {
+                try {
+                    existingProps = loadProps(_dest);
+                } catch (IOException ex) {
+                    log.error("Could not load existing props: " + _dest);
+                    failures.add(ex);
+                }
+            }
+
+            log.info((_dest.exists() ? "Updating" : "Creating") + " file: " + _dest);
+            translator = init(new DefaultTranslator(
+                _table, _index, _generatedFields, language, existingProps)).setLog(log)
+                .setTimings(timings(), Bundle.baseName(_source.getFile()));
+            return translator;
+        }
+
+        /**
+         * Replaces the language file with the rendered content, if it has changed.
+         */
+        public void finish (byte[] content)
+        {
+            Timings.Timer timer = timings().start(
+                Timings.Phase.FILE_WRITE, Bundle.baseName(_source.getFile()));
+            try {
+                written = PropsFile.replaceIfChanged(_dest, content);
+                if (!written) {
+                    log.info("No changes to file: " + _dest);
+                }
+            } catch (IOException ex) {
+                log.error("Unable to write language file: " + _dest);
+                failures.add(ex);
+            } finally {
+                timer.stop();
+                if (translator.placeholders() > 0) {
+                    log.info(String.format("Used %d placeholder(s) for %s.",
+                        translator.placeholders(), language));
+                }
+                if (translator.retained() > 0) {
+                    log.info(String.format("Retained %d string(s) for %s.",
+                        translator.retained(), language));
+                }
+            }
+        }
+
+        @Override public void run ()
+        {
+            prepare();
+            try {
+                finish(render(_source, ImmutableMap.of(language, translator)).get(language));
+            } catch (IOException ex) {
+                log.error("Unable to write language file: " + _dest);
+                failures.add(ex);
+            }
+        }
+
+        protected final PropsFile _source;
+        protected final Table _table;
+        protected final Index _index;
+        protected final Map<Index.Key, Domain.Row> _generatedFields;
+        protected File _dest;
+    }
 }
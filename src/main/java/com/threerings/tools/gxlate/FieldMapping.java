@@ -5,19 +5,16 @@
 
 package com.threerings.tools.gxlate;
 
-import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
 
 import com.google.common.collect.Maps;
-import com.google.gdata.util.ServiceException;
 
 import com.threerings.tools.gxlate.spreadsheet.Row;
-import com.threerings.tools.gxlate.spreadsheet.Table;
 
 /**
- * Represents a mapping of spreadsheet headers to string values. Performs logic of updating the
- * spreadsheet.
+ * Represents a mapping of spreadsheet headers to string values. Works out which cells of the
+ * spreadsheet need updating.
  */
 public class FieldMapping
 {
@@ -56,21 +53,23 @@ public class FieldMapping
     }
 
     /**
-     * Updates a spreadsheet row to match this mapping's values.
+     * Gets the cells of a spreadsheet row that must be updated to match this mapping's values.
+     * @return the new cell values, keyed by column header
      */
-    public void upload (Table table, Row row, Set<Language> languages)
-        throws ServiceException, IOException
+    public Map<String, String> getUpdates (Row row, Set<Language> languages)
     {
+        Map<String, String> updates = Maps.newLinkedHashMap();
         for (Field key : Field.values()) {
             if (key.isLanguage()) {
                 for (Language language : languages) {
-                    table.updateCell(row, key.getColumnName(language),
+                    updates.put(key.getColumnName(language),
                             key.modifyValue(_values.get(key), language));
                 }
             } else if (needsUpload(row, key) || key == Field.LAST_UPDATED) {
-                table.updateCell(row, key.getColumnName(), _values.get(key));
+                updates.put(key.getColumnName(), _values.get(key));
             }
         }
+        return updates;
     }
 
     public void put (Field field, String value)
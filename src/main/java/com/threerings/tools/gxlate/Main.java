@@ -0,0 +1,584 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * Runs the goals of the plugin from the command line, without maven. The goals and their
+ * parameters are read from the plugin descriptor, so each goal takes the same properties as in a
+ * build:
+ * <pre>
+ * java -jar gxlate-maven-plugin-cli.jar upload -Dgxlate.languages=FR -Dgxlate.folderId=...
+ * </pre>
+ * Properties are also read from {@code ~/.gxlate/gxlate.properties} and from
+ * {@code gxlate.properties} in the current directory, which stands in for the project directory.
+ * Parameters configured in the pom as lists of objects, such as the rules, are given as
+ * numbered properties of each element, for example {@code gxlate.rules.0.file=global} and
+ * {@code gxlate.rules.0.ignore=m\..*}.
+ *
+ * <p>Only the classes of the chosen goal are loaded, so goals that work offline, such as
+ * check-props, never load the google data API and finish in a fraction of a second.</p>
+ */
+public class Main
+{
+    public static void main (String[] args)
+    {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs a goal as directed by the given command line arguments.
+     * @return the exit status, zero if the goal succeeded
+     */
+    public static int run (String[] args)
+    {
+        String goalName = null;
+        boolean debug = false, help = false;
+        Properties cmdline = new Properties();
+        for (String arg : args) {
+            if (arg.equals("-X") || arg.equals("--debug")) {
+                debug = true;
+            } else if (arg.equals("-h") || arg.equals("--help")) {
+                help = true;
+            } else if (arg.startsWith("-D") && arg.length() > 2) {
+                int eq = arg.indexOf('=');
+                // like maven, a property with no value is true
+                cmdline.setProperty(eq < 0 ? arg.substring(2) : arg.substring(2, eq),
+                    eq < 0 ? "true" : arg.substring(eq + 1));
+            } else if (goalName == null && !arg.startsWith("-")) {
+                goalName = arg;
+            } else {
+                System.err.println("Unexpected argument: " + arg);
+                return 2;
+            }
+        }
+
+        Map<String, Goal> goals;
+        try {
+            goals = readGoals();
+        } catch (Exception ex) {
+            System.err.println("Unable to read the plugin descriptor: " + ex);
+            return 1;
+        }
+        Goal goal = goalName == null ? null : goals.get(goalName);
+        if (goal == null) {
+            if (goalName != null) {
+                System.err.println("Unknown goal: " + goalName);
+            }
+            usage(goalName == null && help ? System.out : System.err, goals);
+            return goalName == null && help ? 0 : 2;
+        }
+        if (help) {
+            goal.usage(System.out);
+            return 0;
+        }
+
+        Properties props = new Properties();
+        try {
+            loadProperties(props, new File(System.getProperty("user.home"),
+                ".gxlate" + File.separator + "gxlate.properties"));
+            loadProperties(props, new File(PROPERTIES));
+        } catch (IOException ex) {
+            System.err.println("Unable to read properties: " + ex);
+            return 1;
+        }
+        props.putAll(System.getProperties());
+        props.putAll(cmdline);
+
+        Log log = new ConsoleLog(debug);
+        BaseMojo mojo;
+        try {
+            mojo = goal.configure(props);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            goal.usage(System.err);
+            return 2;
+        } catch (Exception ex) {
+            log.error("Unable to create goal " + goal.name, ex);
+            return 1;
+        }
+        mojo.setLog(log);
+
+        try {
+            mojo.execute();
+            return 0;
+        } catch (MojoFailureException ex) {
+            log.error(ex.getMessage());
+        } catch (MojoExecutionException ex) {
+            // the base mojo wraps the underlying exception without a message
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            if (debug) {
+                log.error(cause);
+            } else {
+                log.error(cause + " (use -X for details)");
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * A goal of the plugin, as described in the plugin descriptor.
+     */
+    protected static class Goal
+    {
+        public final String name;
+        public final String implementation;
+        public final String description;
+        public final List<Param> params = Lists.newArrayList();
+
+        public Goal (String name, String implementation, String description)
+        {
+            this.name = name;
+            this.implementation = implementation;
+            this.description = description;
+        }
+
+        /**
+         * Creates the mojo of this goal and sets its parameters from the given properties, or
+         * to their default values.
+         * @throws IllegalArgumentException if a required parameter is missing or a value is
+         * invalid
+         */
+        public BaseMojo configure (Properties props)
+            throws Exception
+        {
+            BaseMojo mojo = (BaseMojo)Class.forName(implementation).newInstance();
+            for (Param param : params) {
+                if (param.expression == null && param.defaultValue == null) {
+                    if (param.editable) {
+                        param.setElements(mojo, props);
+                    }
+                    continue;
+                }
+                String value = evaluate(param.expression, props);
+                if (value == null) {
+                    value = evaluate(param.defaultValue, props);
+                }
+                if (value == null) {
+                    if (param.required) {
+                        throw new IllegalArgumentException("Missing required parameter " +
+                            param.describe());
+                    }
+                    continue;
+                }
+                param.set(mojo, value);
+            }
+            return mojo;
+        }
+
+        /**
+         * Prints the properties that may be set for this goal.
+         */
+        public void usage (PrintStream out)
+        {
+            out.println(name + ": " + summarize(description));
+            for (Param param : params) {
+                if (param.property() == null) {
+                    if (param.editable && param.expression == null &&
+                            param.defaultValue == null) {
+                        out.println("  -D" + param.elementPrefix() + "<n>.<field>");
+                        out.println("      " + summarize(param.description));
+                    }
+                    continue;
+                }
+                String line = "  -D" + param.property();
+                if (param.required) {
+                    line += " (required)";
+                } else if (param.defaultValue != null) {
+                    line += " (default " + param.defaultValue + ")";
+                }
+                out.println(line);
+                out.println("      " + summarize(param.description));
+            }
+        }
+    }
+
+    /**
+     * A parameter of a goal, as described in the plugin descriptor.
+     */
+    protected static class Param
+    {
+        /** The name of the mojo field. */
+        public final String name;
+
+        /** The expression giving the value, usually a property reference, or null. */
+        public String expression;
+
+        /** The expression giving the value if the first yields none, or null. */
+        public String defaultValue;
+
+        public String description;
+        public boolean required;
+
+        /** Whether the parameter may be configured, false for values maven provides. */
+        public boolean editable = true;
+
+        public Param (String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * Gets the property that sets this parameter, or null if none does.
+         */
+        public String property ()
+        {
+            Matcher m = REFERENCE.matcher(expression == null ? "" : expression);
+            return m.matches() ? m.group(1) : null;
+        }
+
+        /**
+         * Describes the parameter by its property, if it has one.
+         */
+        public String describe ()
+        {
+            String property = property();
+            return property == null ? name : name + " (" + property + ")";
+        }
+
+        /**
+         * Sets the field of a mojo for this parameter, converting the value to its type.
+         * @throws IllegalArgumentException if the value can't be converted
+         */
+        public void set (Object mojo, String value)
+            throws Exception
+        {
+            Field field = findField(mojo.getClass());
+            field.setAccessible(true);
+            field.set(mojo, convert(field.getType(), value, describe()));
+        }
+
+        /**
+         * Gets the prefix of the numbered properties that give the elements of a list parameter.
+         */
+        public String elementPrefix ()
+        {
+            return "gxlate." + name + ".";
+        }
+
+        /**
+         * Sets a list parameter of a mojo from numbered properties giving the public fields of
+         * each element, for example {@code gxlate.rules.0.file}. Numbering starts at zero and
+         * ends at the first missing element.
+         * @throws IllegalArgumentException if the parameter is not a list of such objects, or a
+         * property names a field the elements do not have
+         */
+        public void setElements (Object mojo, Properties props)
+            throws Exception
+        {
+            Field field = findField(mojo.getClass());
+            Type type = field.getGenericType();
+            if (field.getType() != List.class || !(type instanceof ParameterizedType) ||
+                    !(((ParameterizedType)type).getActualTypeArguments()[0] instanceof Class)) {
+                throw new IllegalArgumentException("Parameter " + name +
+                    " can't be set from the command line");
+            }
+            Class<?> elementType =
+                (Class<?>)((ParameterizedType)type).getActualTypeArguments()[0];
+
+            List<Object> elements = Lists.newArrayList();
+            for (int ii = 0; ; ii++) {
+                String prefix = elementPrefix() + ii + ".";
+                Object element = null;
+                for (String key : props.stringPropertyNames()) {
+                    if (!key.startsWith(prefix)) {
+                        continue;
+                    }
+                    if (element == null) {
+                        element = elementType.newInstance();
+                    }
+                    Field member;
+                    try {
+                        member = elementType.getField(key.substring(prefix.length()));
+                    } catch (NoSuchFieldException ex) {
+                        throw new IllegalArgumentException("Unknown property " + key);
+                    }
+                    member.set(element, convert(member.getType(), props.getProperty(key), key));
+                }
+                if (element == null) {
+                    break;
+                }
+                elements.add(element);
+            }
+            if (!elements.isEmpty()) {
+                field.setAccessible(true);
+                field.set(mojo, elements);
+            }
+        }
+
+        protected Field findField (Class<?> clazz)
+            throws NoSuchFieldException
+        {
+            for (Class<?> cc = clazz; cc != null; cc = cc.getSuperclass()) {
+                try {
+                    return cc.getDeclaredField(name);
+                } catch (NoSuchFieldException ex) {
+                    // try the superclass
+                }
+            }
+            throw new NoSuchFieldException(name);
+        }
+    }
+
+    /**
+     * Converts the string value of a parameter to the type of the field it sets.
+     * @param what describes the value in error messages
+     * @throws IllegalArgumentException if the value can't be converted
+     */
+    protected static Object convert (Class<?> type, String value, String what)
+    {
+        try {
+            if (type == String.class) {
+                return value;
+            } else if (type == File.class) {
+                return new File(value).getAbsoluteFile();
+            } else if (type == boolean.class || type == Boolean.class) {
+                return Boolean.valueOf(value);
+            } else if (type == int.class || type == Integer.class) {
+                return Integer.valueOf(value);
+            } else if (type == long.class || type == Long.class) {
+                return Long.valueOf(value);
+            }
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid value for " + what + ": " + value);
+        }
+        throw new IllegalArgumentException(what + " can't be set from the command line");
+    }
+
+    /**
+     * A log that prints debug messages only if enabled.
+     */
+    protected static class ConsoleLog extends SystemStreamLog
+    {
+        public ConsoleLog (boolean debug)
+        {
+            _debug = debug;
+        }
+
+        @Override public boolean isDebugEnabled ()
+        {
+            return _debug;
+        }
+
+        @Override public void debug (CharSequence content)
+        {
+            if (_debug) {
+                super.debug(content);
+            }
+        }
+
+        @Override public void debug (CharSequence content, Throwable error)
+        {
+            if (_debug) {
+                super.debug(content, error);
+            }
+        }
+
+        @Override public void debug (Throwable error)
+        {
+            if (_debug) {
+                super.debug(error);
+            }
+        }
+
+        protected final boolean _debug;
+    }
+
+    /**
+     * Reads the goals and their parameters from the plugin descriptor, by goal name.
+     */
+    protected static Map<String, Goal> readGoals ()
+        throws Exception
+    {
+        InputStream in = Main.class.getResourceAsStream(DESCRIPTOR);
+        if (in == null) {
+            throw new IOException(DESCRIPTOR + " not found");
+        }
+        Document doc;
+        try {
+            doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+        } finally {
+            in.close();
+        }
+
+        Map<String, Goal> goals = Maps.newTreeMap();
+        NodeList mojos = doc.getElementsByTagName("mojo");
+        for (int ii = 0; ii < mojos.getLength(); ii++) {
+            Element mojo = (Element)mojos.item(ii);
+            Goal goal = new Goal(childText(mojo, "goal"), childText(mojo, "implementation"),
+                childText(mojo, "description"));
+            Map<String, Param> params = Maps.newLinkedHashMap();
+            for (Element param : children(child(mojo, "parameters"), "parameter")) {
+                Param p = new Param(childText(param, "name"));
+                p.required = Boolean.valueOf(childText(param, "required"));
+                p.editable = !"false".equals(childText(param, "editable"));
+                p.description = childText(param, "description");
+                params.put(p.name, p);
+            }
+            for (Element config : children(child(mojo, "configuration"), null)) {
+                Param p = params.get(config.getTagName());
+                if (p != null) {
+                    p.expression = trimToNull(config.getTextContent());
+                    p.defaultValue = trimToNull(config.getAttribute("default-value"));
+                }
+            }
+            goal.params.addAll(params.values());
+            goals.put(goal.name, goal);
+        }
+        return goals;
+    }
+
+    /**
+     * Evaluates an expression from the plugin descriptor, replacing each {@code ${name}} with
+     * the value of the named property.
+     * @return the value, or null if the expression is null or refers to an undefined property
+     */
+    protected static String evaluate (String expression, Properties props)
+    {
+        if (expression == null) {
+            return null;
+        }
+        Matcher m = REFERENCE.matcher(expression);
+        StringBuffer buf = new StringBuffer();
+        while (m.find()) {
+            String value = lookup(m.group(1), props);
+            if (value == null) {
+                return null;
+            }
+            m.appendReplacement(buf, Matcher.quoteReplacement(value));
+        }
+        m.appendTail(buf);
+        return buf.toString();
+    }
+
+    /**
+     * Gets the value of a property, or of the project properties used in default values.
+     */
+    protected static String lookup (String name, Properties props)
+    {
+        String value = props.getProperty(name);
+        if (value != null) {
+            return value;
+        } else if (name.equals("basedir") || name.equals("project.basedir")) {
+            return new File("").getAbsolutePath();
+        } else if (name.equals("project.build.directory")) {
+            return new File("target").getAbsolutePath();
+        }
+        return null;
+    }
+
+    protected static void loadProperties (Properties props, File file)
+        throws IOException
+    {
+        if (!file.isFile()) {
+            return;
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    protected static void usage (PrintStream out, Map<String, Goal> goals)
+    {
+        out.println("Usage: java -jar gxlate-maven-plugin-cli.jar <goal> [-Dproperty=value]... " +
+            "[-X] [--help]");
+        out.println("Goals:");
+        for (Goal goal : goals.values()) {
+            out.println("  " + goal.name + ": " + summarize(goal.description));
+        }
+        out.println("Use <goal> --help to list the properties of a goal.");
+    }
+
+    /**
+     * Gets the first sentence of a description, without markup.
+     */
+    protected static String summarize (String description)
+    {
+        if (description == null) {
+            return "";
+        }
+        String text = description.replaceAll("<[^>]*>", "").replaceAll("\\s+", " ").trim();
+        int dot = text.indexOf(". ");
+        return dot < 0 ? text : text.substring(0, dot + 1);
+    }
+
+    protected static Element child (Element parent, String name)
+    {
+        List<Element> children = children(parent, name);
+        return children.isEmpty() ? null : children.get(0);
+    }
+
+    protected static String childText (Element parent, String name)
+    {
+        Element child = child(parent, name);
+        return child == null ? null : trimToNull(child.getTextContent());
+    }
+
+    /**
+     * Gets the child elements of an element with the given name, or all of them if the name is
+     * null. A null element has none.
+     */
+    protected static List<Element> children (Element parent, String name)
+    {
+        List<Element> children = Lists.newArrayList();
+        if (parent == null) {
+            return children;
+        }
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element &&
+                    (name == null || ((Element)node).getTagName().equals(name))) {
+                children.add((Element)node);
+            }
+        }
+        return children;
+    }
+
+    protected static String trimToNull (String text)
+    {
+        text = text == null ? null : text.trim();
+        return text == null || text.isEmpty() ? null : text;
+    }
+
+    /** The plugin descriptor generated by the maven plugin plugin. */
+    protected static final String DESCRIPTOR = "/META-INF/maven/plugin.xml";
+
+    /** The properties file read from the current directory. */
+    protected static final String PROPERTIES = "gxlate.properties";
+
+    /** Matches a property reference in an expression. */
+    protected static final Pattern REFERENCE = Pattern.compile("\\$\\{([^}]+)\\}");
+}
@@ -0,0 +1,268 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import org.apache.maven.plugin.logging.Log;
+
+import com.threerings.tools.gxlate.spreadsheet.DeleteVerifier;
+import com.threerings.tools.gxlate.spreadsheet.Row;
+import com.threerings.tools.gxlate.spreadsheet.Table;
+
+/**
+ * Writes the planned changes of one bundle to its worksheet: updates first, while the row
+ * numbers are as planned, then inserts and lastly deletes. Each row is checked to still have the
+ * planned id before it is updated or deleted. If any update fails, nothing more is written and
+ * the rest is left to a resume from the journal. Updates and inserts are written in chunks, each
+ * recorded in the sync journal, if there is one, once it has been written. Log messages and
+ * failures are kept with the applier until it is finished, so that appliers may be run in
+ * parallel.
+ */
+public class PlanApplier
+    implements Runnable, DeleteVerifier
+{
+    public final UploadPlan.Bundle bundle;
+    public final BufferedLog log;
+    public final List<Exception> failures = Lists.newArrayList();
+
+    /** The version of the worksheet after the last change was written, or null if unknown. */
+    public String version;
+
+    /**
+     * Creates an applier for the changes of a bundle.
+     * @param journal the journal in which to record the progress of the writes, or null
+     */
+    public PlanApplier (UploadPlan.Bundle bundle, Table table, Log log, Timings timings,
+        SyncJournal journal)
+    {
+        this.bundle = bundle;
+        this.log = new BufferedLog(log);
+        _table = table;
+        _timings = timings;
+        _journal = journal;
+        _deleteIds = Sets.newHashSet(bundle.deletes.values());
+    }
+
+    /**
+     * Works out how to finish the changes of a bundle whose writing was interrupted, given the
+     * table as it is now. Rows are matched by id rather than by the planned row numbers: inserts
+     * whose rows are already there are written to those rows instead of adding them again,
+     * and rows to delete that are already gone are left out.
+     */
+    public static UploadPlan.Bundle reconcile (UploadPlan.Bundle bundle, Table table)
+    {
+        String idColumn = Field.ID.getColumnName();
+        Map<String, Row> rows = Maps.newHashMap();
+        for (Row row : table.getRows()) {
+            if (row != null && !row.isDeleted() && row.getValues().get(idColumn) != null) {
+                rows.put(row.getValues().get(idColumn), row);
+            }
+        }
+
+        UploadPlan.Bundle rest = new UploadPlan.Bundle(bundle.name, bundle.worksheetVersion);
+        rest.updates.addAll(bundle.updates);
+        for (Map<String, String> insert : bundle.inserts) {
+            String id = insert.get(idColumn);
+            Row row = rows.get(id);
+            if (row == null) {
+                rest.inserts.add(insert);
+            } else {
+                rest.updates.add(new UploadPlan.Update(row, id, insert));
+            }
+        }
+        for (Map.Entry<Integer, String> delete : bundle.deletes.entrySet()) {
+            Row row = rows.get(delete.getValue());
+            if (row != null) {
+                rest.deletes.put(row.getNum(), delete.getValue());
+                Map<String, String> cells = bundle.deletedCells.get(delete.getKey());
+                if (cells != null) {
+                    rest.deletedCells.put(row.getNum(), cells);
+                }
+            }
+        }
+        return rest;
+    }
+
+    @Override public void run ()
+    {
+        Timings.Timer timer = _timings.start(Timings.Phase.NETWORK_WRITE, bundle.name);
+        try {
+            update();
+            if (!failures.isEmpty()) {
+                // leave the inserts and deletes to a resume from the journal, which will find
+                // the rows as the failed updates left them
+                return;
+            }
+            insert();
+        } finally {
+            timer.stop();
+        }
+
+        if (_table.needsRefresh()) {
+            log.info("Refreshing table to incorporate added rows");
+            timer = _timings.start(Timings.Phase.DOWNLOAD, bundle.name);
+            try {
+                _table.refreshAddedRows();
+            } catch (Exception ex) {
+                log.error("Refresh failed", ex);
+                failures.add(ex);
+            } finally {
+                timer.stop();
+            }
+        }
+
+        if (!bundle.deletes.isEmpty()) {
+            timer = _timings.start(Timings.Phase.NETWORK_WRITE, bundle.name);
+            try {
+                _table.deleteRows(bundle.deletes.keySet(), this);
+                fetchVersion();
+            } catch (Exception ex) {
+                log.error("Unable to delete rows", ex);
+                failures.add(ex);
+            } finally {
+                timer.stop();
+            }
+        }
+
+        if (failures.isEmpty() && _journal != null) {
+            try {
+                _journal.done(bundle.name);
+            } catch (IOException ex) {
+                log.warn("Unable to write the sync journal", ex);
+            }
+        }
+    }
+
+    @Override public boolean confirmDelete (int row, Map<String, String> fields)
+    {
+        String id = fields.get(Field.ID.getColumnName());
+        if (id == null) {
+            log.error("Row " + row + " was not formatted correctly, it did not "
+                + "contain all of the expected columns");
+            return false;
+        }
+        if (!_deleteIds.contains(id)) {
+            log.error("Row " + row + " was not found in original set of rows, maybe "
+                + " something changed.");
+            return false;
+        }
+        log.info("Removing row " + id + " (row " + row + ")");
+        return true;
+    }
+
+    protected void update ()
+    {
+        if (bundle.updates.isEmpty()) {
+            return;
+        }
+        log.info(String.format("Updating %d row(s) of %s", bundle.updates.size(), bundle.name));
+        for (int start = 0; start < bundle.updates.size(); start += CHUNK_ROWS) {
+            int end = Math.min(start + CHUNK_ROWS, bundle.updates.size());
+            Map<Row, Map<String, String>> values = Maps.newLinkedHashMap();
+            for (UploadPlan.Update update : bundle.updates.subList(start, end)) {
+                Row row = findRow(update.row, update.id);
+                if (row == null) {
+                    log.error(String.format("Row %d of %s no longer has id %s, not updating",
+                        update.row, bundle.name, update.id));
+                    failures.add(new Exception(update.id));
+                } else {
+                    values.put(row, update.cells);
+                }
+            }
+            try {
+                _table.updateCells(values);
+            } catch (Exception ex) {
+                log.error("Failed to update rows of " + bundle.name, ex);
+                failures.add(ex);
+                return;
+            }
+            journal(false, end);
+        }
+    }
+
+    protected void insert ()
+    {
+        if (bundle.inserts.isEmpty()) {
+            return;
+        }
+        log.info(String.format("Adding %d row(s) to %s", bundle.inserts.size(), bundle.name));
+        for (int start = 0; start < bundle.inserts.size(); start += CHUNK_ROWS) {
+            int end = Math.min(start + CHUNK_ROWS, bundle.inserts.size());
+            try {
+                _table.addNewRows(bundle.inserts.subList(start, end));
+            } catch (Exception ex) {
+                log.error("Failed to add rows to " + bundle.name, ex);
+                failures.add(ex);
+                return;
+            }
+            journal(true, end);
+        }
+    }
+
+    /**
+     * Fetches the version of the worksheet now that the first {@code count} inserts or updates
+     * have been written, and records both in the journal, if there is one. Nothing is recorded
+     * if the version can't be fetched, so the chunk will not be resumed.
+     */
+    protected void journal (boolean inserts, int count)
+    {
+        fetchVersion();
+        if (_journal == null || version == null) {
+            return;
+        }
+        try {
+            if (inserts) {
+                _journal.inserted(bundle.name, count, version);
+            } else {
+                _journal.updated(bundle.name, count, version);
+            }
+        } catch (IOException ex) {
+            log.warn("Unable to write the sync journal", ex);
+        }
+    }
+
+    /**
+     * Fetches the version of the worksheet as it is after the changes written so far. The version
+     * is forgotten if it can't be fetched, rather than left at that of an earlier write.
+     */
+    protected void fetchVersion ()
+    {
+        try {
+            version = _table.fetchVersion();
+        } catch (Exception ex) {
+            log.warn("Unable to fetch the version of " + bundle.name, ex);
+            version = null;
+        }
+    }
+
+    protected Row findRow (int num, String id)
+    {
+        List<Row> rows = _table.getRows();
+        // data rows start at 2 in the doc but from zero in the table
+        Row row = num - 2 < rows.size() ? rows.get(num - 2) : null;
+        if (row == null || row.isDeleted() ||
+                !id.equals(row.getValues().get(Field.ID.getColumnName()))) {
+            return null;
+        }
+        return row;
+    }
+
+    protected final Table _table;
+    protected final Timings _timings;
+    protected final SyncJournal _journal;
+    protected final Set<String> _deleteIds;
+
+    /** The number of rows written between entries in the journal. */
+    protected static final int CHUNK_ROWS = 100;
+}
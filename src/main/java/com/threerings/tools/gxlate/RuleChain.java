@@ -0,0 +1,439 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+
+import com.threerings.tools.gxlate.props.PropsFile;
+
+/**
+ * A sequence of rules compiled for fast application. Rules whose condition is a plain literal,
+ * prefix or suffix match on an input are folded into a pair of tries per input, so that finding
+ * which of them match costs about the same no matter how many there are. All other rules are
+ * tested one by one. Either way, the first rule in the sequence that produces a status wins.
+ */
+public class RuleChain
+{
+    /**
+     * A case insensitive match of an input against a literal string, optionally followed or
+     * preceded by a wildcard.
+     */
+    public static class Affix
+    {
+        /** The ways in which the literal may be matched. */
+        public enum Kind { EXACT, PREFIX, SUFFIX }
+
+        /** How the literal is matched. */
+        public final Kind kind;
+
+        /** The literal, with ASCII letters in lower case. */
+        public final String literal;
+
+        /**
+         * Attempts to convert a regular expression into an affix match. Only literal characters,
+         * quoted sections, leading or trailing anchors and a single {@code .*} at the start or
+         * end are understood.
+         * @return the equivalent affix, or null if the expression is not that simple
+         */
+        public static Affix parse (String regex)
+        {
+            StringBuilder literal = new StringBuilder();
+            boolean leading = false, trailing = false;
+            for (int ii = 0, len = regex.length(); ii < len; ii++) {
+                char c = regex.charAt(ii);
+                if (c == '.' && ii + 1 < len && regex.charAt(ii + 1) == '*') {
+                    ii++;
+                    if (literal.length() == 0) {
+                        leading = true;
+                    } else {
+                        trailing = true;
+                    }
+                    continue;
+                }
+                if ((c == '^' && ii == 0) || (c == '$' && ii == len - 1)) {
+                    continue;
+                }
+                if (trailing) {
+                    return null;
+                }
+                if (c == '\\') {
+                    if (++ii == len) {
+                        return null;
+                    }
+                    c = regex.charAt(ii);
+                    if (c == 'Q') {
+                        int end = regex.indexOf("\\E", ii + 1);
+                        end = end == -1 ? len : end;
+                        literal.append(regex, ii + 1, end);
+                        ii = end + 1;
+                    } else if (Character.isLetterOrDigit(c)) {
+                        return null;
+                    } else {
+                        literal.append(c);
+                    }
+                } else if (META.indexOf(c) != -1) {
+                    return null;
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (leading && trailing) {
+                return null;
+            }
+            Kind kind = leading ? Kind.SUFFIX : trailing ? Kind.PREFIX : Kind.EXACT;
+            return new Affix(kind, fold(literal));
+        }
+
+        public Affix (Kind kind, String literal)
+        {
+            this.kind = kind;
+            this.literal = literal;
+        }
+
+        protected static final String META = ".^$|?*+()[]{}\\";
+    }
+
+    /**
+     * Creates a new chain for the given rules.
+     */
+    public RuleChain (Rules.Rule... rules)
+    {
+        _rules = rules;
+        Map<Rules.Input, AffixIndex> indices = Maps.newLinkedHashMap();
+        List<Integer> direct = Lists.newArrayList();
+        int insertLimit = 0, firstRead = rules.length;
+        for (int ii = 0; ii < rules.length; ii++) {
+            if (rules[ii].action.inserts()) {
+                insertLimit = ii + 1;
+            }
+            Rules.Condition condition = rules[ii].condition;
+            if (condition.readsSets()) {
+                firstRead = Math.min(firstRead, ii);
+            }
+            Affix affix = condition.affix();
+            if (affix == null) {
+                direct.add(ii);
+                continue;
+            }
+            Rules.Input input = condition.input();
+            AffixIndex index = indices.get(input);
+            if (index == null) {
+                indices.put(input, index = new AffixIndex(input));
+            }
+            index.add(affix, ii);
+        }
+        _direct = Ints.toArray(direct);
+        _insertLimit = insertLimit;
+        _insertsFirst = firstRead >= insertLimit;
+        _indices = indices.values().toArray(new AffixIndex[indices.size()]);
+        for (AffixIndex index : _indices) {
+            index.freeze();
+        }
+    }
+
+    /**
+     * Applies the rules to the supplied property, stopping at the first one that produces a
+     * status.
+     * @return the status produced, or null if no rule produced one
+     */
+    public Rules.Status apply (PropsFile.Entry entry, Map<Field, String> fields,
+        Rules.Context context)
+    {
+        // when profiling, measure every rule on its own
+        if (context.getProfile() != null) {
+            return applyAll(entry, fields, context);
+        }
+
+        // find all the folded rules that match, in order, then merge them with the others
+        Hits hits = HITS.get();
+        hits.size = 0;
+        for (AffixIndex index : _indices) {
+            if (!index.collect(entry, hits)) {
+                return applyAll(entry, fields, context);
+            }
+        }
+        hits.sort();
+
+        int di = 0, hi = 0;
+        while (di < _direct.length || hi < hits.size) {
+            Rules.Status status;
+            if (hi == hits.size || (di < _direct.length && _direct[di] < hits.rules[hi])) {
+                status = _rules[_direct[di++]].apply(entry, fields, context);
+            } else {
+                status = _rules[hits.rules[hi++]].action.execute(entry, fields, context);
+            }
+            if (status != null) {
+                return status;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tests if the rules that add to named sets can be run for all entries before the statuses
+     * are worked out, with {@link #insert}, and add exactly what applying the rules in order
+     * would. This is so if no rule up to the last one that inserts tests a named set, since such
+     * a rule would see a set that is only partly populated.
+     */
+    public boolean canInsertFirst ()
+    {
+        return _insertsFirst;
+    }
+
+    /**
+     * Executes the rules that add to named sets which {@link #apply} would reach for the entry,
+     * that is, those whose conditions match and which come no later than the first rule that
+     * produces a status. Other rules are only tested, and their fields discarded. When entries
+     * are processed in parallel, this is run for all entries first, so that the named sets are
+     * complete before any rule tests them. Only valid if {@link #canInsertFirst}.
+     */
+    public void insert (PropsFile.Entry entry, Rules.Context context)
+    {
+        Map<Field, String> ignored = null;
+        for (int ii = 0; ii < _insertLimit; ii++) {
+            Rules.Rule rule = _rules[ii];
+            if (!rule.condition.test(entry, context)) {
+                continue;
+            }
+            if (ignored == null) {
+                ignored = Maps.newEnumMap(Field.class);
+            }
+            if (rule.action.execute(entry, ignored, context) != null) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applies the rules one by one, without using the tries.
+     */
+    protected Rules.Status applyAll (PropsFile.Entry entry, Map<Field, String> fields,
+        Rules.Context context)
+    {
+        for (Rules.Rule rule : _rules) {
+            Rules.Status status = rule.apply(entry, fields, context);
+            if (status != null) {
+                return status;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lower cases the ASCII letters of a string, like {@link java.util.regex.Pattern}'s case
+     * insensitive matching.
+     */
+    protected static String fold (CharSequence str)
+    {
+        StringBuilder folded = new StringBuilder(str.length());
+        for (int ii = 0, len = str.length(); ii < len; ii++) {
+            folded.append(fold(str.charAt(ii)));
+        }
+        return folded.toString();
+    }
+
+    protected static char fold (char c)
+    {
+        return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+    }
+
+    /**
+     * Tests if a character would stop a regular expression's {@code .} from matching.
+     */
+    protected static boolean isLineTerminator (char c)
+    {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * The indices of the rules found to match an entry.
+     */
+    protected static class Hits
+    {
+        public int[] rules = new int[4];
+        public int size;
+
+        public void add (int[] indices)
+        {
+            if (indices == null) {
+                return;
+            }
+            if (size + indices.length > rules.length) {
+                rules = Arrays.copyOf(rules, Math.max(rules.length * 2, size + indices.length));
+            }
+            System.arraycopy(indices, 0, rules, size, indices.length);
+            size += indices.length;
+        }
+
+        public void sort ()
+        {
+            Arrays.sort(rules, 0, size);
+        }
+    }
+
+    /**
+     * A node in a trie of literals. Children are kept in sorted arrays once the trie is frozen.
+     */
+    protected static class Node
+    {
+        /** Rules whose literal ends at this node, and whether they may be followed by more. */
+        public int[] exact, partial;
+
+        public Node child (char c)
+        {
+            int idx = Arrays.binarySearch(_keys, c);
+            return idx < 0 ? null : _children[idx];
+        }
+
+        public Node add (char c)
+        {
+            Node child = _building.get(c);
+            if (child == null) {
+                _building.put(c, child = new Node());
+            }
+            return child;
+        }
+
+        public void freeze ()
+        {
+            _keys = new char[_building.size()];
+            _children = new Node[_building.size()];
+            int ii = 0;
+            for (Map.Entry<Character, Node> entry : _building.entrySet()) {
+                _keys[ii] = entry.getKey();
+                _children[ii++] = entry.getValue();
+                entry.getValue().freeze();
+            }
+            _building = null;
+        }
+
+        protected static int[] append (int[] indices, int index)
+        {
+            if (indices == null) {
+                return new int[] {index};
+            }
+            int[] result = Arrays.copyOf(indices, indices.length + 1);
+            result[indices.length] = index;
+            return result;
+        }
+
+        protected Map<Character, Node> _building = new TreeMap<Character, Node>();
+        protected char[] _keys;
+        protected Node[] _children;
+    }
+
+    /**
+     * The affix rules that apply to a single input, stored as a trie of exact and prefix
+     * literals and a trie of reversed suffix literals.
+     */
+    protected static class AffixIndex
+    {
+        public AffixIndex (Rules.Input input)
+        {
+            _input = input;
+        }
+
+        public void add (Affix affix, int index)
+        {
+            String literal = affix.literal;
+            Node node;
+            switch (affix.kind) {
+            case EXACT:
+            case PREFIX:
+                node = _forward;
+                for (int ii = 0; ii < literal.length(); ii++) {
+                    node = node.add(literal.charAt(ii));
+                }
+                if (affix.kind == Affix.Kind.EXACT) {
+                    node.exact = Node.append(node.exact, index);
+                } else {
+                    node.partial = Node.append(node.partial, index);
+                }
+                break;
+            case SUFFIX:
+                node = _reverse;
+                for (int ii = literal.length() - 1; ii >= 0; ii--) {
+                    node = node.add(literal.charAt(ii));
+                }
+                node.partial = Node.append(node.partial, index);
+                break;
+            }
+        }
+
+        public void freeze ()
+        {
+            _forward.freeze();
+            _reverse.freeze();
+        }
+
+        /**
+         * Adds the indices of the rules matching the entry to the hits.
+         * @return false if the input cannot be matched using the tries and the rules must be
+         * tested individually
+         */
+        public boolean collect (PropsFile.Entry entry, Hits hits)
+        {
+            String value = _input.get(entry);
+            if (value == null) {
+                return true;
+            }
+            int len = value.length();
+            for (int ii = 0; ii < len; ii++) {
+                if (isLineTerminator(value.charAt(ii))) {
+                    return false;
+                }
+            }
+
+            Node node = _forward;
+            hits.add(node.partial);
+            for (int ii = 0; ii < len && node != null; ii++) {
+                node = node.child(fold(value.charAt(ii)));
+                if (node != null) {
+                    hits.add(node.partial);
+                    if (ii == len - 1) {
+                        hits.add(node.exact);
+                    }
+                }
+            }
+            if (len == 0) {
+                hits.add(node.exact);
+            }
+
+            node = _reverse;
+            hits.add(node.partial);
+            for (int ii = len - 1; ii >= 0 && node != null; ii--) {
+                node = node.child(fold(value.charAt(ii)));
+                if (node != null) {
+                    hits.add(node.partial);
+                }
+            }
+            return true;
+        }
+
+        protected final Rules.Input _input;
+        protected final Node _forward = new Node(), _reverse = new Node();
+    }
+
+    protected final Rules.Rule[] _rules;
+    protected final int[] _direct;
+    protected final int _insertLimit;
+    protected final boolean _insertsFirst;
+    protected final AffixIndex[] _indices;
+
+    /** Reused to collect the folded rules that match, to save allocating for each entry. */
+    protected static final ThreadLocal<Hits> HITS = new ThreadLocal<Hits>() {
+        @Override protected Hits initialValue () {
+            return new Hits();
+        }
+    };
+}
@@ -5,16 +5,18 @@
 
 package com.threerings.tools.gxlate;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
 
 import com.threerings.tools.gxlate.props.PropsFile;
 import com.threerings.tools.gxlate.props.PropsFile.Entry;
@@ -28,6 +30,11 @@ public class Rules
         public String get (PropsFile.Entry entry) {
             return entry.getComment();
         }
+
+        @Override
+        public String toString () {
+            return "comment";
+        }
     };
 
     /** Supplies the id of the property as input to a condition. */
@@ -36,6 +43,11 @@ public class Rules
         public String get (PropsFile.Entry entry) {
             return entry.getId();
         }
+
+        @Override
+        public String toString () {
+            return "id";
+        }
     };
 
     /** Catch all conditional. */
@@ -44,6 +56,11 @@ public class Rules
         public boolean test (Entry entry, Context context) {
             return true;
         }
+
+        @Override
+        public String toString () {
+            return "else";
+        }
     };
 
     /**
@@ -122,20 +139,34 @@ public class Rules
         {
             fields.put(Field.TYPE, "General");
             fields.put(Field.SCOPE, name);
-            for (Rule rule : Iterables.concat(context.globalRules, Arrays.asList(_rules))) {
-                Status status = rule.apply(entry, fields, context);
-                if (status != null) {
-                    return status;
-                }
+            Profile profile = context.getProfile();
+            if (profile == null) {
+                return context.getChain(this).apply(entry, fields, context);
             }
-            return null;
+
+            long start = System.nanoTime();
+            Status status = context.getChain(this).apply(entry, fields, context);
+            profile.record(this, System.nanoTime() - start);
+            return status;
+        }
+
+        /**
+         * Creates the chain of the given global rules followed by this scope's rules.
+         */
+        protected RuleChain createChain (List<Rule> globalRules)
+        {
+            Rule[] chain = globalRules.toArray(new Rule[globalRules.size() + _rules.length]);
+            System.arraycopy(_rules, 0, chain, globalRules.size(), _rules.length);
+            return new RuleChain(chain);
         }
 
         private final Rule[] _rules;
     }
 
     /**
-     * Stuff the rules need to know from the app.
+     * Stuff the rules need to know from the app. Safe for use by multiple threads, though rules
+     * that read named sets depend on the order in which entries are processed, see
+     * {@link RuleChain#insert}.
      */
     public static class Context
     {
@@ -154,7 +185,9 @@ public class Rules
         {
             Set<String> set = sets.get(name);
             if (set == null) {
-                sets.put(name, set = Sets.newHashSet());
+                set = Sets.newSetFromMap(Maps.<String, Boolean>newConcurrentMap());
+                Set<String> existing = sets.putIfAbsent(name, set);
+                set = existing != null ? existing : set;
             }
             return set;
         }
@@ -164,9 +197,119 @@ public class Rules
             return (flags & flag) != 0;
         }
 
-        private final Map<String, Set<String>> sets = Maps.newHashMap();
+        /**
+         * Gets the compiled chain of global and scope rules for the given scope. The chain is
+         * created on first use, so global rules added after that are not seen by the scope.
+         */
+        public RuleChain getChain (Scope scope)
+        {
+            RuleChain chain = chains.get(scope);
+            if (chain == null) {
+                chain = scope.createChain(globalRules);
+                RuleChain existing = chains.putIfAbsent(scope, chain);
+                chain = existing != null ? existing : chain;
+            }
+            return chain;
+        }
+
+        /**
+         * Sets the profile in which to record the time taken by rules. This also makes all rules
+         * be tested one by one, so that the timings are for the individual conditions.
+         */
+        public Context setProfile (Profile profile)
+        {
+            this.profile = profile;
+            return this;
+        }
+
+        public Profile getProfile ()
+        {
+            return profile;
+        }
+
+        private final ConcurrentMap<String, Set<String>> sets = Maps.newConcurrentMap();
+        private final ConcurrentMap<Scope, RuleChain> chains = Maps.newConcurrentMap();
         private final List<Rule> globalRules;
         private final int flags;
+        private Profile profile;
+    }
+
+    /**
+     * Accumulates how often rules are tested and matched and how long their conditions take,
+     * as well as the time taken to apply all rules per scope. Safe for use by multiple threads.
+     */
+    public static class Profile
+    {
+        /** Counters for one rule or scope. */
+        public static class Counters
+        {
+            /** What is being counted. */
+            public final String name;
+
+            public final AtomicLong hits = new AtomicLong();
+            public final AtomicLong misses = new AtomicLong();
+            public final AtomicLong nanos = new AtomicLong();
+
+            public Counters (String name)
+            {
+                this.name = name;
+            }
+
+            @Override public String toString ()
+            {
+                return String.format("%,14d ns %,10d hits %,10d misses  %s",
+                    nanos.get(), hits.get(), misses.get(), name);
+            }
+        }
+
+        /**
+         * Records the testing of a rule's condition.
+         */
+        public void record (Rule rule, boolean hit, long nanos)
+        {
+            Counters counters = get(_rules, rule, rule.toString());
+            (hit ? counters.hits : counters.misses).incrementAndGet();
+            counters.nanos.addAndGet(nanos);
+        }
+
+        /**
+         * Records the application of a scope's rules to an entry.
+         */
+        public void record (Scope scope, long nanos)
+        {
+            Counters counters = get(_scopes, scope, "scope " + scope.fileName);
+            counters.hits.incrementAndGet();
+            counters.nanos.addAndGet(nanos);
+        }
+
+        /**
+         * Gets the counters of the scopes and then the rules, each sorted by decreasing time.
+         */
+        public List<Counters> report ()
+        {
+            Ordering<Counters> byTime = new Ordering<Counters>() {
+                @Override public int compare (Counters c1, Counters c2) {
+                    return Longs.compare(c2.nanos.get(), c1.nanos.get());
+                }
+            };
+            List<Counters> report = byTime.sortedCopy(_scopes.values());
+            report.addAll(byTime.sortedCopy(_rules.values()));
+            return report;
+        }
+
+        protected static <K> Counters get (ConcurrentMap<K, Counters> map, K key, String name)
+        {
+            Counters counters = map.get(key);
+            if (counters == null) {
+                counters = new Counters(name);
+                Counters existing = map.putIfAbsent(key, counters);
+                counters = existing != null ? existing : counters;
+            }
+            return counters;
+        }
+
+        protected final ConcurrentMap<Rule, Counters> _rules = Maps.newConcurrentMap();
+        protected final ConcurrentMap<Scope, Counters> _scopes = Maps.newConcurrentMap();
     }
 
     /** An input to a rule. */
@@ -180,6 +323,7 @@ public class Rules
             PatternCondition pr = new PatternCondition();
             pr.input = this;
             pr.pattern = Pattern.compile(expression, Pattern.CASE_INSENSITIVE);
+            pr.affix = RuleChain.Affix.parse(expression);
             return pr;
         }
 
@@ -187,8 +331,11 @@ public class Rules
          * Creates a condition that matches the input against a "special" wildcard-type
          * expression: dots are not treated specially and the asterisk is short for ".*"
          */
-        public PatternCondition smatches (String expression)
+        public Condition smatches (String expression)
         {
+            if (GlobCondition.isGlob(expression)) {
+                return new GlobCondition(this, expression);
+            }
             return matches(expression.replace(".", "\\.").replace("*", ".*"));
         }
 
@@ -215,6 +362,31 @@ public class Rules
     {
         abstract public boolean test (PropsFile.Entry entry, Context context);
 
+        /**
+         * Gets the literal match equivalent to this condition, if it is that simple. If not null,
+         * {@link #input()} must also be provided.
+         */
+        RuleChain.Affix affix ()
+        {
+            return null;
+        }
+
+        /**
+         * Gets the input tested by this condition, if it tests exactly one.
+         */
+        Input input ()
+        {
+            return null;
+        }
+
+        /**
+         * Tests if this condition depends on the contents of a named set.
+         */
+        boolean readsSets ()
+        {
+            return false;
+        }
+
         /**
          * Creates a rule based on this condition that will set the type column for the new row.
          */
@@ -281,6 +453,11 @@ public class Rules
                     }
                     return result;
                 }
+
+                @Override boolean inserts ()
+                {
+                    return true;
+                }
             });
         }
 
@@ -292,6 +469,16 @@ public class Rules
                 {
                     return c1.test(entry, context) && c2.test(entry, context);
                 }
+
+                @Override boolean readsSets ()
+                {
+                    return c1.readsSets() || c2.readsSets();
+                }
+
+                @Override public String toString ()
+                {
+                    return c1 + " and " + c2;
+                }
             };
         }
 
@@ -302,6 +489,11 @@ public class Rules
                 {
                     return context.isFlagSet(flag);
                 }
+
+                @Override public String toString ()
+                {
+                    return "flag " + flag;
+                }
             });
         }
     }
@@ -317,13 +509,26 @@ public class Rules
 
         public Status apply (PropsFile.Entry entry, Map<Field, String> fields, Context context)
         {
-            return condition.test(entry, context)
-                ? action.execute(entry, fields, context)
-                : null;
+            Profile profile = context.getProfile();
+            if (profile == null) {
+                return condition.test(entry, context)
+                    ? action.execute(entry, fields, context)
+                    : null;
+            }
+
+            long start = System.nanoTime();
+            boolean hit = condition.test(entry, context);
+            profile.record(this, hit, System.nanoTime() - start);
+            return hit ? action.execute(entry, fields, context) : null;
+        }
+
+        @Override public String toString ()
+        {
+            return condition.toString();
         }
 
-        private Condition condition;
-        private Action action;
+        final Condition condition;
+        final Action action;
     }
 
     /** Condition to test if an input matches a pattern. */
@@ -332,11 +537,142 @@ public class Rules
         @Override
         public boolean test (Entry entry, Context context)
         {
-            return pattern.matcher(input.get(entry)).matches();
+            String value = input.get(entry);
+            return value != null && pattern.matcher(value).matches();
+        }
+
+        @Override public String toString ()
+        {
+            return input + " matches '" + pattern.pattern() + "'";
+        }
+
+        @Override RuleChain.Affix affix ()
+        {
+            return affix;
+        }
+
+        @Override Input input ()
+        {
+            return input;
         }
 
         private Input input;
         private Pattern pattern;
+        private RuleChain.Affix affix;
+    }
+
+    /**
+     * Condition to test if an input matches a wildcard expression, case insensitively, without
+     * using a regular expression. The literal text between the asterisks is matched in order,
+     * anchored at the start and end.
+     */
+    public static class GlobCondition extends Condition
+    {
+        /**
+         * Tests if an expression can be matched as a glob. The only special character allowed is
+         * the asterisk, and the literal text may not contain line terminators.
+         */
+        public static boolean isGlob (String expression)
+        {
+            for (int ii = 0, len = expression.length(); ii < len; ii++) {
+                char c = expression.charAt(ii);
+                if ((c != '.' && c != '*' && RuleChain.Affix.META.indexOf(c) != -1) ||
+                        RuleChain.isLineTerminator(c)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public GlobCondition (Input input, String expression)
+        {
+            this.input = input;
+            this.expression = expression;
+            this.parts = RuleChain.fold(expression).split("\\*", -1);
+        }
+
+        @Override
+        public boolean test (Entry entry, Context context)
+        {
+            String value = input.get(entry);
+            if (value == null) {
+                return false;
+            }
+
+            // without wildcards, the whole value must match
+            int last = parts.length - 1;
+            if (last == 0) {
+                return value.length() == parts[0].length() && regionMatches(value, 0, parts[0]);
+            }
+
+            // the first and last parts are anchored, and must not overlap
+            String prefix = parts[0], suffix = parts[last];
+            int start = prefix.length(), end = value.length() - suffix.length();
+            if (end < start || !regionMatches(value, 0, prefix) ||
+                    !regionMatches(value, end, suffix)) {
+                return false;
+            }
+
+            // the wildcards will not match line terminators, just like the regex dot
+            for (int ii = start; ii < end; ii++) {
+                if (RuleChain.isLineTerminator(value.charAt(ii))) {
+                    return false;
+                }
+            }
+
+            // the middle parts can go anywhere in between, so take the earliest match of each
+            for (int ii = 1; ii < last; ii++) {
+                String part = parts[ii];
+                while (start + part.length() <= end && !regionMatches(value, start, part)) {
+                    start++;
+                }
+                if (start + part.length() > end) {
+                    return false;
+                }
+                start += part.length();
+            }
+            return true;
+        }
+
+        @Override RuleChain.Affix affix ()
+        {
+            if (parts.length == 1) {
+                return new RuleChain.Affix(RuleChain.Affix.Kind.EXACT, parts[0]);
+            } else if (parts.length == 2 && parts[1].isEmpty()) {
+                return new RuleChain.Affix(RuleChain.Affix.Kind.PREFIX, parts[0]);
+            } else if (parts.length == 2 && parts[0].isEmpty()) {
+                return new RuleChain.Affix(RuleChain.Affix.Kind.SUFFIX, parts[1]);
+            }
+            return null;
+        }
+
+        @Override Input input ()
+        {
+            return input;
+        }
+
+        /**
+         * Tests if the value contains the folded literal at the given offset, ignoring the case of
+         * ASCII letters.
+         */
+        protected static boolean regionMatches (String value, int offset, String literal)
+        {
+            for (int ii = 0, len = literal.length(); ii < len; ii++) {
+                if (RuleChain.fold(value.charAt(offset + ii)) != literal.charAt(ii)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override public String toString ()
+        {
+            return input + " smatches '" + expression + "'";
+        }
+
+        private final Input input;
+        private final String expression;
+        private final String[] parts;
     }
 
     /** Condition to test if a substring of an input is in a set. */
@@ -349,6 +685,16 @@ public class Rules
                 context.getNamedSet(setName).contains(val.substring(prefix.length()));
         }
 
+        @Override public String toString ()
+        {
+            return input + " is '" + prefix + "' + " + setName;
+        }
+
+        @Override boolean readsSets ()
+        {
+            return true;
+        }
+
         private Input input;
         private String setName;
         private String prefix;
@@ -358,6 +704,14 @@ public class Rules
     {
         abstract public Status execute (PropsFile.Entry entry, Map<Field, String> fields,
             Context context);
+
+        /**
+         * Tests if executing this action adds to a named set in the context.
+         */
+        boolean inserts ()
+        {
+            return false;
+        }
     }
 
     /** An action that copies some fields into the result. */
@@ -394,6 +748,11 @@ public class Rules
             return Status.NORMAL;
         }
 
+        @Override boolean inserts ()
+        {
+            return true;
+        }
+
         final String setName;
         final int offset;
     }
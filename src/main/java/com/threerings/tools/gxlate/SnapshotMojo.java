@@ -0,0 +1,44 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+import com.google.gdata.data.spreadsheet.WorksheetEntry;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+
+import com.threerings.tools.gxlate.spreadsheet.Snapshot;
+import com.threerings.tools.gxlate.spreadsheet.Table;
+
+/**
+ * Goal which downloads every worksheet of the translation document and saves them to the file
+ * given by {@code gxlate.snapshot}. Later builds configured with the same file read their tables
+ * from it without accessing google docs.
+ */
+@Mojo(name="snapshot")
+public class SnapshotMojo extends BaseMojo
+{
+    @Override
+    protected void run ()
+        throws Exception
+    {
+        if (snapshot() == null) {
+            throw new MojoExecutionException("gxlate.snapshot must be set to the output file");
+        }
+
+        Document doc = new Document();
+        Map<String, Table> tables = Maps.newLinkedHashMap();
+        for (WorksheetEntry worksheet : doc.getWorksheets()) {
+            tables.put(worksheet.getTitle().getPlainText(), doc.readTable(worksheet));
+        }
+
+        Snapshot.save(snapshot(), tables);
+        getLog().info(String.format("Saved %d worksheet(s) to %s", tables.size(), snapshot()));
+    }
+}
@@ -0,0 +1,254 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+/**
+ * A write-ahead record of an upload plan being written to the spreadsheet, so that an upload that
+ * dies part way through, from a quota error, a timeout or a cancelled build, can be finished by
+ * the next one. The plan is saved next to the journal before anything is written, then each
+ * chunk of updates or inserts is recorded once it has been written, with the version of the
+ * worksheet after the write, as is each bundle once all of its changes have been. The journal is
+ * removed when every bundle is done. Downloads are not journaled: they only write local files,
+ * each replaced whole, so an interrupted download is simply run again.
+ */
+public class SyncJournal
+{
+    /**
+     * Creates a journal kept in the given file, with the plan in a file of the same name plus
+     * {@code .plan}.
+     */
+    public SyncJournal (File file)
+    {
+        _file = file;
+        _planFile = new File(file.getPath() + ".plan");
+    }
+
+    /**
+     * Returns true if there is a journal left by an earlier upload.
+     */
+    public boolean exists ()
+    {
+        return _file.exists() && _planFile.exists();
+    }
+
+    /**
+     * Starts journaling the writing of a plan, replacing any previous journal.
+     */
+    public synchronized void begin (UploadPlan plan)
+        throws IOException
+    {
+        delete();
+        plan.save(_planFile);
+        _stream = new FileOutputStream(_file);
+        _out = new DataOutputStream(new BufferedOutputStream(_stream));
+        _out.writeInt(MAGIC);
+        _out.writeInt(VERSION);
+        sync();
+    }
+
+    /**
+     * Records that the first {@code count} updates of a bundle have been written, leaving its
+     * worksheet at the given version.
+     */
+    public synchronized void updated (String bundle, int count, String version)
+        throws IOException
+    {
+        record(UPDATED, bundle, count, version);
+    }
+
+    /**
+     * Records that the first {@code count} inserts of a bundle have been written, leaving its
+     * worksheet at the given version.
+     */
+    public synchronized void inserted (String bundle, int count, String version)
+        throws IOException
+    {
+        record(INSERTED, bundle, count, version);
+    }
+
+    /**
+     * Records that all the changes of a bundle have been written.
+     */
+    public synchronized void done (String bundle)
+        throws IOException
+    {
+        record(DONE, bundle, 0, "");
+    }
+
+    /**
+     * Stops journaling. The journal is removed if all the bundles are done, otherwise it is kept
+     * for the next upload to finish them.
+     */
+    public synchronized void end (boolean complete)
+    {
+        close();
+        if (complete) {
+            delete();
+        }
+    }
+
+    /**
+     * Removes the journal and its plan.
+     */
+    public synchronized void delete ()
+    {
+        close();
+        _file.delete();
+        _planFile.delete();
+    }
+
+    /**
+     * Reads the plan journaled by an earlier upload.
+     */
+    public UploadPlan plan ()
+        throws IOException
+    {
+        return UploadPlan.load(_planFile);
+    }
+
+    /**
+     * Reads the journal left by an earlier upload and works out which changes of its plan were
+     * not recorded as written. Bundles that were done are left out. The worksheet version of each
+     * remaining bundle is the one last recorded, so that it can be checked for changes since. A
+     * record cut short when the upload died is ignored, so the chunk it was writing is included.
+     */
+    public UploadPlan remaining (UploadPlan plan)
+        throws IOException
+    {
+        Map<String, Progress> progress = Maps.newHashMap();
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(_file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a sync journal: " + _file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported journal version " + version + ": " + _file);
+            }
+            for (int type; (type = in.read()) != -1; ) {
+                String bundle, worksheetVersion;
+                int count;
+                try {
+                    bundle = in.readUTF();
+                    count = in.readInt();
+                    worksheetVersion = in.readUTF();
+                } catch (EOFException ex) {
+                    break;
+                }
+                Progress p = progress.get(bundle);
+                if (p == null) {
+                    progress.put(bundle, p = new Progress());
+                }
+                if (type == UPDATED) {
+                    p.updates = count;
+                    p.version = worksheetVersion;
+                } else if (type == INSERTED) {
+                    p.inserts = count;
+                    p.version = worksheetVersion;
+                } else if (type == DONE) {
+                    p.done = true;
+                } else {
+                    throw new IOException("Corrupt sync journal: " + _file);
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        UploadPlan remaining = new UploadPlan();
+        for (UploadPlan.Bundle bundle : plan.bundles) {
+            Progress p = progress.get(bundle.name);
+            if (p == null) {
+                p = new Progress();
+            } else if (p.done) {
+                continue;
+            }
+            UploadPlan.Bundle rest = new UploadPlan.Bundle(bundle.name,
+                p.version != null ? p.version : bundle.worksheetVersion);
+            rest.updates.addAll(bundle.updates.subList(
+                Math.min(p.updates, bundle.updates.size()), bundle.updates.size()));
+            rest.inserts.addAll(bundle.inserts.subList(
+                Math.min(p.inserts, bundle.inserts.size()), bundle.inserts.size()));
+            rest.deletes.putAll(bundle.deletes);
+            rest.deletedCells.putAll(bundle.deletedCells);
+            remaining.bundles.add(rest);
+        }
+        return remaining;
+    }
+
+    /**
+     * Appends a record and makes sure it is on disk before anything more is written to the
+     * spreadsheet. Nothing is recorded if the journal has not been begun.
+     */
+    protected void record (int type, String bundle, int count, String version)
+        throws IOException
+    {
+        if (_out == null) {
+            return;
+        }
+        _out.writeByte(type);
+        _out.writeUTF(bundle);
+        _out.writeInt(count);
+        _out.writeUTF(version);
+        sync();
+    }
+
+    protected void sync ()
+        throws IOException
+    {
+        _out.flush();
+        _stream.getFD().sync();
+    }
+
+    protected void close ()
+    {
+        if (_out == null) {
+            return;
+        }
+        try {
+            _out.close();
+        } catch (IOException ex) {
+            // nothing more will be recorded anyway
+        }
+        _out = null;
+        _stream = null;
+    }
+
+    /** The progress recorded for a bundle. */
+    protected static class Progress
+    {
+        public int updates;
+        public int inserts;
+        public boolean done;
+        public String version;
+    }
+
+    protected final File _file;
+    protected final File _planFile;
+    protected FileOutputStream _stream;
+    protected DataOutputStream _out;
+
+    protected static final int MAGIC = 0x67786a6c; // "gxjl"
+    protected static final int VERSION = 2;
+
+    protected static final int UPDATED = 1;
+    protected static final int INSERTED = 2;
+    protected static final int DONE = 3;
+}
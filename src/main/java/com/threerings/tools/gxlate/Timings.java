@@ -0,0 +1,287 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+
+import org.apache.maven.plugin.logging.Log;
+
+import com.threerings.tools.gxlate.util.FileUtil;
+
+/**
+ * Accumulates the time spent in each phase of a goal, overall and per bundle. Timers started
+ * while another is running on the same thread are nested: their time is taken out of the outer
+ * timer, so that each moment is counted in one phase only. Safe for use by multiple threads,
+ * though times recorded on several threads at once are summed and so may exceed the wall time.
+ */
+public class Timings
+{
+    /**
+     * The phases into which goals are broken down.
+     */
+    public enum Phase
+    {
+        AUTH("auth"),
+        DISCOVERY("props discovery"),
+        PARSE("props parsing"),
+        DOWNLOAD("worksheet download"),
+        INDEX("index build"),
+        RULES("rule evaluation"),
+        DIFF("diff"),
+        NETWORK_WRITE("network writes"),
+        FILE_WRITE("file writes");
+
+        /** The name of the phase in the summary. */
+        public final String description;
+
+        Phase (String description)
+        {
+            this.description = description;
+        }
+    }
+
+    /**
+     * Times a phase from its creation until stopped.
+     */
+    public class Timer
+    {
+        /**
+         * Stops the timer and records its time, less that of any nested timers.
+         */
+        public void stop ()
+        {
+            long elapsed = System.nanoTime() - _start;
+            record(_phase, _bundle, elapsed - _nested);
+            if (_parent != null) {
+                _parent._nested += elapsed;
+            }
+            CURRENT.set(_parent);
+        }
+
+        protected Timer (Phase phase, String bundle)
+        {
+            _phase = phase;
+            _bundle = bundle;
+            _parent = CURRENT.get();
+            CURRENT.set(this);
+            _start = System.nanoTime();
+        }
+
+        protected final Phase _phase;
+        protected final String _bundle;
+        protected final Timer _parent;
+        protected final long _start;
+        protected long _nested;
+    }
+
+    /**
+     * Creates new timings for the given goal, starting the clock on its total time.
+     */
+    public Timings (String goal)
+    {
+        _goal = goal;
+        _start = System.nanoTime();
+    }
+
+    /**
+     * Starts timing a phase. The timer must be stopped on the same thread, normally in a finally
+     * block.
+     * @param bundle the base name of the bundle being worked on, or null for work not specific
+     * to one bundle
+     */
+    public Timer start (Phase phase, String bundle)
+    {
+        return new Timer(phase, bundle);
+    }
+
+    /**
+     * Adds time to a phase.
+     * @param bundle the base name of the bundle, or null for work not specific to one bundle
+     */
+    public void record (Phase phase, String bundle, long nanos)
+    {
+        String key = bundle == null ? "" : bundle;
+        AtomicLongArray times = _bundles.get(key);
+        if (times == null) {
+            times = new AtomicLongArray(PHASES.length);
+            AtomicLongArray existing = _bundles.putIfAbsent(key, times);
+            times = existing != null ? existing : times;
+        }
+        times.addAndGet(phase.ordinal(), nanos);
+    }
+
+    /**
+     * Logs the total time of each phase and the slowest bundles.
+     */
+    public void report (Log log)
+    {
+        long[] totals = totals();
+        log.info(String.format("Timings for %s, total %s:", _goal, format(elapsed())));
+        for (Phase phase : PHASES) {
+            if (totals[phase.ordinal()] > 0) {
+                log.info(String.format("  %-20s %10s", phase.description,
+                    format(totals[phase.ordinal()])));
+            }
+        }
+
+        List<String> bundles = bundlesBySlowest();
+        for (int ii = 0; ii < bundles.size(); ii++) {
+            String bundle = bundles.get(ii);
+            String line = String.format("  %-20s %10s %s", bundle,
+                format(sum(_bundles.get(bundle))), describe(_bundles.get(bundle)));
+            if (ii == 0) {
+                log.info("Slowest bundles:");
+            }
+            if (ii < REPORTED_BUNDLES) {
+                log.info(line);
+            } else {
+                log.debug(line);
+            }
+        }
+    }
+
+    /**
+     * Writes the timings to a file as JSON. Times are in milliseconds. The file has the total
+     * time, the time of each phase and the time of each phase per bundle.
+     */
+    public void write (File file)
+        throws IOException
+    {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"goal\": ").append(quote(_goal)).append(",\n");
+        json.append("  \"totalMillis\": ").append(millis(elapsed())).append(",\n");
+        json.append("  \"phases\": ");
+        appendPhases(json, totals());
+        json.append(",\n  \"bundles\": {");
+        List<String> bundles = Ordering.natural().sortedCopy(_bundles.keySet());
+        bundles.remove("");
+        for (int ii = 0; ii < bundles.size(); ii++) {
+            json.append(ii == 0 ? "\n    " : ",\n    ");
+            json.append(quote(bundles.get(ii))).append(": ");
+            appendPhases(json, toArray(_bundles.get(bundles.get(ii))));
+        }
+        json.append(bundles.isEmpty() ? "}\n}\n" : "\n  }\n}\n");
+
+        FileUtil.replace(file, json.toString().getBytes(Charsets.UTF_8), false);
+    }
+
+    protected long elapsed ()
+    {
+        return System.nanoTime() - _start;
+    }
+
+    protected long[] totals ()
+    {
+        long[] totals = new long[PHASES.length];
+        for (AtomicLongArray times : _bundles.values()) {
+            for (int ii = 0; ii < totals.length; ii++) {
+                totals[ii] += times.get(ii);
+            }
+        }
+        return totals;
+    }
+
+    protected List<String> bundlesBySlowest ()
+    {
+        List<String> bundles = Lists.newArrayList(_bundles.keySet());
+        bundles.remove("");
+        Collections.sort(bundles, new Ordering<String>() {
+            @Override public int compare (String b1, String b2) {
+                return Long.signum(sum(_bundles.get(b2)) - sum(_bundles.get(b1)));
+            }
+        });
+        return bundles;
+    }
+
+    protected static String describe (AtomicLongArray times)
+    {
+        List<String> parts = Lists.newArrayList();
+        for (Phase phase : PHASES) {
+            long nanos = times.get(phase.ordinal());
+            if (nanos > 0) {
+                parts.add(phase.description + " " + format(nanos));
+            }
+        }
+        return "(" + Joiner.on(", ").join(parts) + ")";
+    }
+
+    protected static void appendPhases (StringBuilder json, long[] times)
+    {
+        json.append('{');
+        for (Phase phase : PHASES) {
+            json.append(phase.ordinal() == 0 ? "" : ", ");
+            json.append(quote(phase.name().toLowerCase())).append(": ");
+            json.append(millis(times[phase.ordinal()]));
+        }
+        json.append('}');
+    }
+
+    protected static long[] toArray (AtomicLongArray times)
+    {
+        long[] result = new long[times.length()];
+        for (int ii = 0; ii < result.length; ii++) {
+            result[ii] = times.get(ii);
+        }
+        return result;
+    }
+
+    protected static long sum (AtomicLongArray times)
+    {
+        long sum = 0;
+        for (int ii = 0; ii < times.length(); ii++) {
+            sum += times.get(ii);
+        }
+        return sum;
+    }
+
+    protected static long millis (long nanos)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    protected static String format (long nanos)
+    {
+        return String.format("%.2fs", nanos / 1e9);
+    }
+
+    protected static String quote (String str)
+    {
+        StringBuilder buf = new StringBuilder("\"");
+        for (int ii = 0; ii < str.length(); ii++) {
+            char c = str.charAt(ii);
+            if (c == '"' || c == '\\') {
+                buf.append('\\').append(c);
+            } else if (c < 0x20) {
+                buf.append(String.format("\\u%04x", (int)c));
+            } else {
+                buf.append(c);
+            }
+        }
+        return buf.append('"').toString();
+    }
+
+    protected final String _goal;
+    protected final long _start;
+    protected final ConcurrentMap<String, AtomicLongArray> _bundles = Maps.newConcurrentMap();
+
+    protected static final Phase[] PHASES = Phase.values();
+    protected static final int REPORTED_BUNDLES = 10;
+
+    /** The innermost running timer of each thread. */
+    protected static final ThreadLocal<Timer> CURRENT = new ThreadLocal<Timer>();
+}
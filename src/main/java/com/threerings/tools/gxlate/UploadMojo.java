@@ -5,17 +5,24 @@
 
 package com.threerings.tools.gxlate;
 
+import java.io.File;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.gdata.data.spreadsheet.WorksheetEntry;
 
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
 import com.threerings.tools.gxlate.props.PropsFile;
-import com.threerings.tools.gxlate.spreadsheet.DeleteVerifier;
 import com.threerings.tools.gxlate.spreadsheet.Index;
 import com.threerings.tools.gxlate.spreadsheet.Row;
 import com.threerings.tools.gxlate.spreadsheet.Table;
@@ -33,6 +40,28 @@ public class UploadMojo extends BaseMojo
     @Parameter(property="gxlate.removeRows", defaultValue="false")
     private boolean removeRows;
 
+    /**
+     * File in which to record the state of each bundle after it has been synced. Bundles whose
+     * source file, rules and worksheet have not changed since are skipped.
+     */
+    @Parameter(property="gxlate.stateFile",
+        defaultValue="${project.build.directory}/gxlate-state.bin")
+    private File stateFile;
+
+    /**
+     * Whether to compare all bundles to the spreadsheet, even those recorded as in sync.
+     */
+    @Parameter(property="gxlate.force", defaultValue="false")
+    private boolean force;
+
+    /**
+     * File to which the planned changes are saved, for review or to be written later by the
+     * apply goal. Combine with {@code gxlate.checkOnly} to plan without changing the
+     * spreadsheet.
+     */
+    @Parameter(property="gxlate.planFile")
+    private File planFile;
+
     private Set<Index.Key> keysFound = Sets.newHashSet();
 
     @Override
@@ -46,133 +75,194 @@ public class UploadMojo extends BaseMojo
                 + "No changes will be made.");
         }
 
+        BuildState state = BuildState.load(stateFile, getLog());
         Document doc = new Document();
-        Set<Integer> unused = Sets.newHashSet();
-        for (PropsFile source : loadAllProps()) {
-            Table table = doc.loadTable(Bundle.baseName(source.getFile().getName()));
-            Index index = new Index(table, Field.ID.getColumnName());
-            for (Domain.Row genRow : getFilteredRows(source)) {
-                if (genRow.status == Rules.Status.IGNORE || genRow.status == Rules.Status.OMIT) {
-                    continue;
-                }
+        resumeJournal(doc);
+        DefaultTranslator.BraceSet braces = new DefaultTranslator.BraceSet();
+        UploadPlan plan = new UploadPlan();
+        Map<String, Table> tables = Maps.newHashMap();
+        Map<File, BuildState.Bundle> synced = Maps.newLinkedHashMap();
+        int skipped = 0;
+        for (File file : findAllProps()) {
+            String base = Bundle.baseName(file);
+            WorksheetEntry worksheet = doc.findWorksheet(base);
+            BuildState.Bundle current;
+            Timings.Timer timer = timings().start(Timings.Phase.DIFF, base);
+            try {
+                current = new BuildState.Bundle(
+                    Files.hash(file, Hashing.sha1()).toString(), getConfigHash(base),
+                    doc.getVersion(worksheet));
+            } finally {
+                timer.stop();
+            }
+            if (!force && current.equals(state.get(file.getPath()))) {
+                getLog().debug("Skipping unchanged bundle: " + file);
+                skipped++;
+                continue;
+            }
 
-                String error = DefaultTranslator.checkBraces(genRow.fields.english(), unused);
-                if (error != null) {
-                    getLog().error(String.format("String %s %s", genRow.fields.id(), error));
-                    failures.add(new Exception(genRow.fields.id()));
-                    continue;
-                }
+            int failed = failures.size();
+            Table table = doc.loadTable(worksheet);
+            UploadPlan.Bundle changes = plan(loadProps(file), table, braces,
+                current.worksheetVersion);
+            if (!changes.isEmpty()) {
+                getLog().info(String.format("Planned %s for '%s'", changes.summary(), base));
+                plan.bundles.add(changes);
+                tables.put(base, table);
+            }
+            if (failures.size() == failed) {
+                synced.put(file, current);
+            }
+        }
+        if (skipped > 0) {
+            getLog().info(String.format("Skipped %d bundle(s) unchanged since the last upload.",
+                skipped));
+        }
 
-                handleRow(table, index, genRow);
+        if (planFile != null) {
+            getLog().info("Saving upload plan to " + planFile);
+            plan.save(planFile);
+        }
+        if (checkOnly()) {
+            return;
+        }
+
+        // record the bundles that are already in sync first, so that they are skipped next time
+        // even if writing the others is interrupted
+        for (Map.Entry<File, BuildState.Bundle> entry : synced.entrySet()) {
+            if (!tables.containsKey(Bundle.baseName(entry.getKey()))) {
+                state.put(entry.getKey().getPath(), entry.getValue());
             }
-            if (table.needsRefresh()) {
-                getLog().info("Refreshing table to incorporate added rows");
-                try {
-                    // TODO: add support for the index being refreshed somewhere
-                    table.refreshAddedRows();
-                } catch (Exception ex) {
-                    getLog().error("Refresh failed", ex);
-                    failures.add(ex);
-                }
+        }
+        state.save();
+
+        // record the versions the writes left the worksheets at, rather than fetching them
+        // again, so that edits made since are not taken to be in sync
+        Map<String, String> applied = applyPlan(doc, plan, tables);
+        for (Map.Entry<File, BuildState.Bundle> entry : synced.entrySet()) {
+            String base = Bundle.baseName(entry.getKey());
+            BuildState.Bundle current = entry.getValue();
+            String version = applied.get(base);
+            if (tables.containsKey(base) && version != null) {
+                state.put(entry.getKey().getPath(), new BuildState.Bundle(current.sourceHash,
+                    current.configHash, version));
+            }
+        }
+        state.save();
+    }
+
+    /**
+     * Compares the rows generated from a source file to the table and works out the changes
+     * needed to bring the table up to date.
+     */
+    protected UploadPlan.Bundle plan (PropsFile source, Table table,
+        DefaultTranslator.BraceSet braces, String worksheetVersion)
+        throws Exception
+    {
+        String base = Bundle.baseName(source.getFile());
+        UploadPlan.Bundle changes = new UploadPlan.Bundle(base, worksheetVersion);
+        Index index;
+        Timings.Timer timer = timings().start(Timings.Phase.INDEX, base);
+        try {
+            index = new Index(table, Field.ID.getColumnName());
+        } finally {
+            timer.stop();
+        }
+        List<Domain.Row> genRows = getFilteredRows(source);
+
+        timer = timings().start(Timings.Phase.DIFF, base);
+        try {
+            for (Domain.Row genRow : genRows) {
+                checkRow(changes, index, genRow, braces);
             }
             if (removeRows) {
-                doRemovals(table, index);
+                planRemovals(changes, table, index);
             }
+        } finally {
+            timer.stop();
+        }
+        return changes;
+    }
+
+    /**
+     * Forgets the rows found by earlier plans, so that a bundle planned again has the rows that
+     * are no longer in its source removed.
+     */
+    protected void forgetFoundKeys ()
+    {
+        keysFound.clear();
+    }
+
+    /**
+     * Checks a generated row and adds it to the plan if it has changed.
+     */
+    private void checkRow (UploadPlan.Bundle changes, Index index, Domain.Row genRow,
+        DefaultTranslator.BraceSet braces)
+    {
+        if (genRow.status == Rules.Status.IGNORE || genRow.status == Rules.Status.OMIT) {
+            return;
         }
+
+        String error = braces.scan(genRow.fields.english());
+        if (error != null) {
+            getLog().error(String.format("String %s %s", genRow.fields.id(), error));
+            failures.add(new Exception(genRow.fields.id()));
+            return;
+        }
+
+        handleRow(changes, index, genRow);
+    }
+
+    /**
+     * Hashes the configuration that affects which rows are generated for a bundle and how they
+     * are compared to the spreadsheet.
+     */
+    private String getConfigHash (String base)
+    {
+        String config = Joiner.on('\n').join(getIgnoredIds(base)) + "\n" +
+            Joiner.on(',').join(languageList()) + "\n" + removeRows;
+        return Hashing.sha1().hashString(config, Charsets.UTF_8).toString();
     }
 
-    private void handleRow (Table table, Index index, Domain.Row genRow)
+    private void handleRow (UploadPlan.Bundle changes, Index index, Domain.Row genRow)
     {
         Index.Key key = index.key(genRow.fields.toStringMap(languages()));
         Row row = index.lookup(key);
         keysFound.add(key);
         if (row != null) {
             if (genRow.fields.needsUpload(row)) {
-                String rowName = String.format("%s (row %d)", key, row.getNum());
-                getLog().info(String.format("Update required for %s", rowName));
-                if (!checkOnly()) {
-                    try {
-                        genRow.fields.put(Field.VERIFY, "CHANGE");
-                        genRow.fields.upload(table, row, languages());
-                    } catch (Exception ex) {
-                        getLog().error(String.format("Failed to upate %s", rowName), ex);
-                        failures.add(ex);
-                    }
-                }
+                getLog().info(String.format("Update required for %s (row %d)", key,
+                    row.getNum()));
+                genRow.fields.put(Field.VERIFY, "CHANGE");
+                changes.updates.add(new UploadPlan.Update(row, genRow.fields.id(),
+                    genRow.fields.getUpdates(row, languages())));
             }
         } else {
             getLog().info("New row required for " + key);
-            if (!checkOnly()) {
-                try {
-                    genRow.fields.put(Field.VERIFY, "NEW");
-                    table.addNewRow(genRow.fields.toStringMap(languages()));
-                } catch (Exception ex) {
-                    getLog().error(String.format("Failed to insert new row for %s", key), ex);
-                    failures.add(ex);
-                }
-            }
+            genRow.fields.put(Field.VERIFY, "NEW");
+            changes.inserts.add(genRow.fields.toStringMap(languages()));
         }
     }
 
-    private void doRemovals (Table table, Index index)
+    private void planRemovals (UploadPlan.Bundle changes, Table table, Index index)
     {
         getLog().info("Checking for rows to remove");
-        final Set<Index.Key> keysToRemove = Sets.newHashSet();
         for (Row row : table.getRows()) {
             if (row == null) {
                 continue;
             }
             Index.Key key = index.key(row.getValues());
-            if (!keysFound.contains(key)) {
-                keysToRemove.add(key);
-                if (checkOnly()) {
-                    getLog().info(String.format("%s (row %d) requires removal", key, row.getNum()));
+            if (key != null && !keysFound.contains(key)) {
+                getLog().info(String.format("%s (row %d) requires removal", key, row.getNum()));
+                changes.deletes.put(row.getNum(), row.getValues().get(Field.ID.getColumnName()));
+                Map<String, String> cells = Maps.newLinkedHashMap();
+                for (String header : table.getHeaders()) {
+                    if (header != null && row.getValues().containsKey(header)) {
+                        cells.put(header, row.getValues().get(header));
+                    }
                 }
+                changes.deletedCells.put(row.getNum(), cells);
             }
         }
-        if (checkOnly()) {
-            return;
-        }
-
-        Set<Integer> rowsToRemove = Sets.newHashSet();
-        for (Index.Key key : keysToRemove) {
-            rowsToRemove.add(index.lookup(key).getNum());
-        }
-        try {
-            table.deleteRows(rowsToRemove, new VerifyKeyToDelete(index, keysToRemove));
-        } catch (Exception ex) {
-            getLog().error("Unable to delete rows", ex);
-            failures.add(ex);
-        }
-    }
-
-    private class VerifyKeyToDelete implements DeleteVerifier
-    {
-        Index index;
-        Set<Index.Key> keysToRemove;
-
-        VerifyKeyToDelete (Index index, Set<Index.Key> keysToRemove)
-        {
-            this.index = index;
-            this.keysToRemove = keysToRemove;
-        }
-
-        @Override
-        public boolean confirmDelete (int row, Map<String, String> fields)
-        {
-            Index.Key key = index.key(fields);
-            if (key == null) {
-                getLog().error("Row " + row + " was not formatted correctly, it did not "
-                    + "contain all of the expected columns");
-                return false;
-            }
-            if (!keysToRemove.contains(key)) {
-                getLog().error("Row " + row + " was not found in original set of rows, maybe "
-                    + " something changed.");
-                return false;
-            }
-            getLog().info("Removing row " + key + " (row " + row + ")");
-            return true;
-        }
     }
 }
@@ -0,0 +1,288 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.threerings.tools.gxlate.spreadsheet.Row;
+import com.threerings.tools.gxlate.util.FileUtil;
+import com.threerings.tools.gxlate.util.StreamUtil;
+
+/**
+ * The changes that an upload will make to the spreadsheet, worked out from the English
+ * properties files before anything is written. A plan may be saved to a file, reviewed and
+ * applied later, provided the worksheets have not been modified in the meantime.
+ */
+public class UploadPlan
+{
+    /**
+     * New values for some of the cells of an existing row.
+     */
+    public static class Update
+    {
+        /** The number of the row in the worksheet. */
+        public final int row;
+
+        /** The id of the string in the row, checked before the row is updated. */
+        public final String id;
+
+        /** The new cell values, keyed by column header. */
+        public final Map<String, String> cells;
+
+        /** The values of the same cells when the plan was made, for review. */
+        public final Map<String, String> previous;
+
+        public Update (int row, String id, Map<String, String> cells,
+            Map<String, String> previous)
+        {
+            this.row = row;
+            this.id = id;
+            this.cells = cells;
+            this.previous = previous;
+        }
+
+        /**
+         * Creates an update of the given row, taking the previous values from the row.
+         */
+        public Update (Row row, String id, Map<String, String> cells)
+        {
+            this(row.getNum(), id, cells, Maps.<String, String>newLinkedHashMap());
+            for (String column : cells.keySet()) {
+                previous.put(column, row.getValues().get(column));
+            }
+        }
+    }
+
+    /**
+     * The changes to the worksheet of one bundle.
+     */
+    public static class Bundle
+    {
+        /** The base name of the bundle, which is also the name of its worksheet. */
+        public final String name;
+
+        /** The version of the worksheet from which the changes were worked out. */
+        public final String worksheetVersion;
+
+        /** The values of the rows to add, keyed by column header, in the order to add them. */
+        public final List<Map<String, String>> inserts = Lists.newArrayList();
+
+        /** The rows to update. */
+        public final List<Update> updates = Lists.newArrayList();
+
+        /** The ids of the rows to delete, keyed by row number. */
+        public final Map<Integer, String> deletes = Maps.newTreeMap();
+
+        /** The cell values of the rows to delete, keyed by row number, for review. */
+        public final Map<Integer, Map<String, String>> deletedCells = Maps.newTreeMap();
+
+        public Bundle (String name, String worksheetVersion)
+        {
+            this.name = name;
+            this.worksheetVersion = worksheetVersion;
+        }
+
+        /**
+         * Returns true if there are no changes to the worksheet.
+         */
+        public boolean isEmpty ()
+        {
+            return inserts.isEmpty() && updates.isEmpty() && deletes.isEmpty();
+        }
+
+        /**
+         * Gets a short description of the number of changes, for the log.
+         */
+        public String summary ()
+        {
+            return String.format("%d insert(s), %d update(s), %d delete(s)",
+                inserts.size(), updates.size(), deletes.size());
+        }
+
+        /**
+         * Describes every change in full, one line each, so the plan can be reviewed before it
+         * is applied. Updates are listed a cell at a time, with the value the cell had when the
+         * plan was made.
+         */
+        public List<String> describe ()
+        {
+            List<String> lines = Lists.newArrayList();
+            for (Map<String, String> cells : inserts) {
+                lines.add(String.format("Insert into '%s': %s", name, quote(cells)));
+            }
+            for (Update update : updates) {
+                for (Map.Entry<String, String> cell : update.cells.entrySet()) {
+                    String old = update.previous.get(cell.getKey());
+                    if (Objects.equal(old, cell.getValue())) {
+                        continue;
+                    }
+                    lines.add(String.format("Update '%s' row %d (%s) %s: %s -> %s", name,
+                        update.row, update.id, cell.getKey(), quote(old), quote(cell.getValue())));
+                }
+            }
+            for (Map.Entry<Integer, String> delete : deletes.entrySet()) {
+                Map<String, String> cells = deletedCells.get(delete.getKey());
+                lines.add(String.format("Delete from '%s' row %d (%s): %s", name,
+                    delete.getKey(), delete.getValue(),
+                    quote(cells != null ? cells : ImmutableMap.<String, String>of())));
+            }
+            return lines;
+        }
+    }
+
+    /** The bundles with changes, in the order they were planned. */
+    public final List<Bundle> bundles = Lists.newArrayList();
+
+    /**
+     * Reads a plan from a file previously written by {@link #save}.
+     */
+    public static UploadPlan load (File file)
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new GZIPInputStream(new FileInputStream(file))));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an upload plan: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported plan version " + version + ": " + file);
+            }
+            UploadPlan plan = new UploadPlan();
+            for (int ii = in.readInt(); ii > 0; ii--) {
+                Bundle bundle = new Bundle(StreamUtil.readString(in), StreamUtil.readString(in));
+                for (int jj = in.readInt(); jj > 0; jj--) {
+                    bundle.inserts.add(readCells(in));
+                }
+                for (int jj = in.readInt(); jj > 0; jj--) {
+                    int row = in.readInt();
+                    String id = StreamUtil.readString(in);
+                    Map<String, String> cells = readCells(in);
+                    bundle.updates.add(new Update(row, id, cells, readCells(in)));
+                }
+                for (int jj = in.readInt(); jj > 0; jj--) {
+                    int row = in.readInt();
+                    bundle.deletes.put(row, StreamUtil.readString(in));
+                    bundle.deletedCells.put(row, readCells(in));
+                }
+                plan.bundles.add(bundle);
+            }
+            return plan;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns true if none of the bundles have changes.
+     */
+    public boolean isEmpty ()
+    {
+        for (Bundle bundle : bundles) {
+            if (!bundle.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the plan to a file.
+     */
+    public void save (File file)
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(bundles.size());
+            for (Bundle bundle : bundles) {
+                StreamUtil.writeString(out, bundle.name);
+                StreamUtil.writeString(out, bundle.worksheetVersion);
+                out.writeInt(bundle.inserts.size());
+                for (Map<String, String> cells : bundle.inserts) {
+                    writeCells(out, cells);
+                }
+                out.writeInt(bundle.updates.size());
+                for (Update update : bundle.updates) {
+                    out.writeInt(update.row);
+                    StreamUtil.writeString(out, update.id);
+                    writeCells(out, update.cells);
+                    writeCells(out, update.previous);
+                }
+                out.writeInt(bundle.deletes.size());
+                for (Map.Entry<Integer, String> delete : bundle.deletes.entrySet()) {
+                    out.writeInt(delete.getKey());
+                    StreamUtil.writeString(out, delete.getValue());
+                    Map<String, String> cells = bundle.deletedCells.get(delete.getKey());
+                    writeCells(out, cells != null ? cells : ImmutableMap.<String, String>of());
+                }
+            }
+        } finally {
+            out.close();
+        }
+        FileUtil.replace(file, bytes.toByteArray(), false);
+    }
+
+    protected static void writeCells (DataOutputStream out, Map<String, String> cells)
+        throws IOException
+    {
+        out.writeInt(cells.size());
+        for (Map.Entry<String, String> cell : cells.entrySet()) {
+            StreamUtil.writeString(out, cell.getKey());
+            StreamUtil.writeString(out, cell.getValue());
+        }
+    }
+
+    protected static Map<String, String> readCells (DataInputStream in)
+        throws IOException
+    {
+        Map<String, String> cells = Maps.newLinkedHashMap();
+        for (int ii = in.readInt(); ii > 0; ii--) {
+            String key = StreamUtil.readString(in);
+            cells.put(key, StreamUtil.readString(in));
+        }
+        return cells;
+    }
+
+    protected static String quote (String value)
+    {
+        return value == null ? "(empty)" : "\"" + value + "\"";
+    }
+
+    protected static String quote (Map<String, String> cells)
+    {
+        List<String> parts = Lists.newArrayList();
+        for (Map.Entry<String, String> cell : cells.entrySet()) {
+            if (cell.getValue() != null) {
+                parts.add(cell.getKey() + "=" + quote(cell.getValue()));
+            }
+        }
+        return Joiner.on(", ").join(parts);
+    }
+
+    protected static final int MAGIC = 0x67786c70; // "gxlp"
+    protected static final int VERSION = 2;
+}
@@ -0,0 +1,184 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gdata.data.spreadsheet.WorksheetEntry;
+
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import com.threerings.tools.gxlate.spreadsheet.Table;
+
+/**
+ * Goal which uploads new and changed English strings as the properties files are edited, until
+ * it is stopped. All bundles are synced when the goal starts, then each file is parsed again
+ * and compared to its worksheet as soon as it is saved. The login, the worksheet listing and the
+ * tables are kept between syncs, so each one only costs a version check and the writes. A table
+ * is downloaded again if its worksheet has been changed by someone else since the last sync.
+ */
+@Mojo(name="watch")
+public class WatchMojo extends UploadMojo
+{
+    /**
+     * How often to check the properties files for changes, in milliseconds. A changed file is
+     * synced once it has stayed the same for one check, so that it is not read half written.
+     */
+    @Parameter(property="gxlate.pollMillis", defaultValue="1000")
+    private long pollMillis;
+
+    /** The stamp of each source file when it was last synced. */
+    private final Map<File, String> synced = Maps.newHashMap();
+
+    /** The table of each bundle, kept up to date with the changes written to it. */
+    private final Map<String, Table> tables = Maps.newHashMap();
+
+    /** The latest entry fetched for each bundle's worksheet. */
+    private final Map<String, WorksheetEntry> worksheets = Maps.newHashMap();
+
+    /** The version of each bundle's worksheet after the last sync. */
+    private final Map<String, String> versions = Maps.newHashMap();
+
+    @Override
+    protected void run ()
+        throws Exception
+    {
+        Document doc = new Document();
+        resumeJournal(doc);
+        DefaultTranslator.BraceSet braces = new DefaultTranslator.BraceSet();
+        for (File file : findAllProps()) {
+            synced.put(file, stamp(file));
+            sync(doc, file, braces);
+        }
+
+        getLog().info(String.format("Watching %s for changes, stop with ctrl-c", propsDir()));
+        Map<File, String> pending = Maps.newHashMap();
+        while (true) {
+            Thread.sleep(pollMillis);
+            Set<File> files = Sets.newHashSet(
+                findAllProps(propsDir(), Lists.<File>newArrayList()));
+            for (Iterator<File> it = synced.keySet().iterator(); it.hasNext(); ) {
+                File file = it.next();
+                if (!files.contains(file)) {
+                    getLog().info(String.format("%s was removed, leaving its worksheet alone",
+                        file));
+                    it.remove();
+                    pending.remove(file);
+                }
+            }
+            for (File file : files) {
+                String stamp = stamp(file);
+                if (stamp.equals(synced.get(file))) {
+                    pending.remove(file);
+                } else if (stamp.equals(pending.get(file))) {
+                    pending.remove(file);
+                    synced.put(file, stamp);
+                    sync(doc, file, braces);
+                } else {
+                    pending.put(file, stamp);
+                }
+            }
+        }
+    }
+
+    /**
+     * Brings the worksheet of a bundle up to date with its source file. Failures are logged and
+     * forgotten, the bundle is synced again when the file next changes.
+     */
+    private void sync (Document doc, File file, DefaultTranslator.BraceSet braces)
+    {
+        String base = Bundle.baseName(file);
+        long start = System.currentTimeMillis();
+        int failed = failures.size();
+        boolean applied = false;
+        try {
+            Table table = getTable(doc, base);
+            forgetFoundKeys();
+            UploadPlan.Bundle changes = plan(loadProps(file), table, braces, versions.get(base));
+            if (changes.isEmpty()) {
+                getLog().info(String.format("'%s' is up to date", base));
+                applied = true;
+            } else if (checkOnly()) {
+                getLog().info(String.format("Planned %s for '%s'", changes.summary(), base));
+                applied = true;
+            } else {
+                getLog().info(String.format("Applying %s to '%s'", changes.summary(), base));
+                PlanApplier applier = new PlanApplier(changes, table, getLog(), timings(),
+                    null);
+                applier.run();
+                applier.log.flush();
+                failures.addAll(applier.failures);
+                applied = applier.failures.isEmpty();
+                // the version the writes left the worksheet at, so that edits made since are
+                // picked up by the next sync; unknown if it could not be fetched
+                versions.put(base, applier.version);
+                getLog().info(String.format("Synced '%s' in %d ms", base,
+                    System.currentTimeMillis() - start));
+            }
+        } catch (Exception ex) {
+            getLog().error("Failed to sync " + file, ex);
+            failures.add(ex);
+        }
+
+        if (!applied) {
+            // the table may not match the worksheet any more
+            tables.remove(base);
+            worksheets.remove(base);
+        }
+        if (failures.size() > failed) {
+            getLog().warn(String.format("Sync of '%s' failed, it will be retried when %s " +
+                "changes", base, file));
+            failures.subList(failed, failures.size()).clear();
+        }
+    }
+
+    /**
+     * Gets the table of a bundle, downloading it if it has not been yet or if the worksheet
+     * has changed since the last sync. The worksheet entry is fetched again each time and used
+     * by the table, since the one in the listing is out of date once the worksheet is written.
+     */
+    private Table getTable (Document doc, String base)
+        throws Exception
+    {
+        WorksheetEntry worksheet = worksheets.get(base);
+        worksheet = doc.refresh(worksheet != null ? worksheet : doc.findWorksheet(base));
+        worksheets.put(base, worksheet);
+        String version = doc.getVersion(worksheet);
+        Table table = tables.get(base);
+        if (table != null && version.equals(versions.get(base))) {
+            table.setWorksheet(worksheet);
+            return table;
+        }
+        if (table != null) {
+            getLog().info(String.format("'%s' was changed in the spreadsheet", base));
+        }
+        getLog().info(String.format("Downloading '%s' of '%s'", base, doc.title));
+        Timings.Timer timer = timings().start(Timings.Phase.DOWNLOAD, base);
+        try {
+            table = new Table(worksheet);
+        } finally {
+            timer.stop();
+        }
+        tables.put(base, table);
+        versions.put(base, version);
+        return table;
+    }
+
+    /**
+     * Gets a string that changes whenever a file is written.
+     */
+    private static String stamp (File file)
+    {
+        return file.lastModified() + ":" + file.length();
+    }
+}
@@ -7,13 +7,14 @@ package com.threerings.tools.gxlate.props;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Formatter;
-import java.util.Iterator;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -25,6 +26,9 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import com.threerings.tools.gxlate.util.FileUtil;
 
 /**
  * Represents the contents of a property file, prepared for translation. A translated properties
@@ -104,40 +108,97 @@ public class PropsFile
     /**
      * Writes the previously read file, using the given translations. Blank lines and comments are
      * written as in the original. Line continuations are added as needed to keep the length under
-     * 100 columns.
+     * 100 columns. The output is rendered in memory first and the file is only replaced, via a
+     * temporary file and a rename, if its contents differ.
+     * @return true if the file was created or changed, false if it was already up to date
      */
-    public void write (File output, Translator translator)
+    public boolean write (File output, Translator translator)
         throws IOException
     {
-        BufferedWriter writer = new BufferedWriter(new FileWriter(output));
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(buffer));
         try {
-            for (Line line : _lines) {
-                switch(line.getType()) {
-                case COMMENT:
-                case BLANK:
-                case BANNER:
-                case PARENT:
-                    writer.write(line.getContent());
-                    writer.newLine();
-                    break;
-                case ID_KEYWORD:
-                    writer.write(line.getGroup() + "$");
-                    writer.newLine();
-                    break;
-                case PROP:
-                    String prop = line.getGroup();
-                    String trans = translator.translate(prop, _properties.getProperty(prop));
+            write(writer, translator);
+        } finally {
+            writer.close();
+        }
+        return replaceIfChanged(output, buffer.toByteArray());
+    }
+
+    /**
+     * Writes the previously read file to the given writer, using the given translations.
+     */
+    public void write (BufferedWriter writer, Translator translator)
+        throws IOException
+    {
+        write(new BufferedWriter[] {writer}, new Translator[] {translator});
+    }
+
+    /**
+     * Renders several translations of the previously read file in a single pass over its lines.
+     * Each source value is looked up once and handed to every translator in turn. The results
+     * are returned in memory so that the caller can replace each file on its own, using
+     * {@link #replaceIfChanged}, and report any failure against the right translation.
+     * @return the rendered contents, keyed and ordered like the translators
+     */
+    public <K> Map<K, byte[]> render (Map<K, ? extends Translator> translators)
+        throws IOException
+    {
+        int count = translators.size();
+        ByteArrayOutputStream[] buffers = new ByteArrayOutputStream[count];
+        BufferedWriter[] writers = new BufferedWriter[count];
+        for (int ii = 0; ii < count; ii++) {
+            buffers[ii] = new ByteArrayOutputStream();
+            writers[ii] = new BufferedWriter(new OutputStreamWriter(buffers[ii]));
+        }
+        try {
+            write(writers, translators.values().toArray(new Translator[count]));
+        } finally {
+            for (BufferedWriter writer : writers) {
+                writer.close();
+            }
+        }
+
+        Map<K, byte[]> rendered = Maps.newLinkedHashMap();
+        int ii = 0;
+        for (K key : translators.keySet()) {
+            rendered.put(key, buffers[ii++].toByteArray());
+        }
+        return rendered;
+    }
+
+    /**
+     * Writes the previously read file to each of the writers, using the translator at the same
+     * position.
+     */
+    protected void write (BufferedWriter[] writers, Translator[] translators)
+        throws IOException
+    {
+        for (Line line : _lines) {
+            switch(line.getType()) {
+            case COMMENT:
+            case BLANK:
+            case BANNER:
+            case PARENT:
+                writeLine(writers, line.getContent());
+                break;
+            case ID_KEYWORD:
+                writeLine(writers, line.getGroup() + "$");
+                break;
+            case PROP:
+                String prop = line.getGroup();
+                String source = _properties.getProperty(prop);
+                for (int ii = 0; ii < writers.length; ii++) {
+                    String trans = translators[ii].translate(prop, source);
                     if (trans != null) {
-                        writeProp(writer, prop, trans);
-                        writer.newLine();
+                        writeProp(writers[ii], prop, trans);
+                        writers[ii].newLine();
                     }
-                    break;
-                case CONTINUATION:
-                    break;
                 }
+                break;
+            case CONTINUATION:
+                break;
             }
-        } finally {
-            writer.close();
         }
     }
 
@@ -181,125 +242,188 @@ public class PropsFile
     protected void writeProp (BufferedWriter writer, String prop, String value)
         throws IOException
     {
-        List<StringBuilder> lines = Lists.newArrayList(new StringBuilder(prop).append(" = "));
+        LineWrapper wrapper = new LineWrapper(writer);
+        wrapper.write(prop, 0, prop.length());
+        wrapper.write(" = ", 0, 3);
         Matcher m = RE_SPECIAL.matcher(value);
         while (m.find()) {
-            smartAppend(lines, value, m.regionStart(), m.start());
-            switch(m.group().charAt(0)) {
+            wrapper.append(value, m.regionStart(), m.start());
+            char c = m.group().charAt(0);
+            switch(c) {
             case '\t':
-                smartAppend(lines, "\\t");
+                wrapper.append("\\t");
                 break;
             case '\r':
-                smartAppend(lines, "\\r");
+                wrapper.append("\\r");
                 break;
             case '\f':
-                smartAppend(lines, "\\f");
+                wrapper.append("\\f");
                 break;
             case '\n':
-                smartAppend(lines, "\\n");
+                wrapper.append("\\n");
                 break;
             case '\\':
-                smartAppend(lines, "\\\\");
+                wrapper.append("\\\\");
                 break;
             case '\u00a0':
-                smartAppend(lines, " ");
+                wrapper.append(" ");
                 break;
             default:
-                StringBuilder unicode = new StringBuilder();
-                Formatter formatter = new Formatter(unicode);
-                formatter.format("\\u%04x", (int)(m.group().charAt(0)));
-                smartAppend(lines, unicode.toString());
+                wrapper.append(unicodeEscape(c));
             }
             m.region(m.end(), value.length());
         }
-        smartAppend(lines, value, m.regionStart(), value.length());
+        wrapper.append(value, m.regionStart(), value.length());
+    }
 
-        Iterator<StringBuilder> iter = lines.iterator();
-        writer.write(iter.next().toString());
-        while (iter.hasNext()) {
+    protected static void writeLine (BufferedWriter[] writers, String content)
+        throws IOException
+    {
+        for (BufferedWriter writer : writers) {
+            writer.write(content);
             writer.newLine();
-            writer.write(iter.next().toString());
         }
     }
 
-    protected void smartAppend (List<StringBuilder> lines, String appendage)
+    protected static String unicodeEscape (char c)
     {
-        smartAppend(lines, appendage, 0, appendage.length());
+        char[] escape = {'\\', 'u', 0, 0, 0, 0};
+        for (int ii = 5; ii >= 2; ii--, c >>>= 4) {
+            escape[ii] = HEX_DIGITS[c & 0xf];
+        }
+        return new String(escape);
     }
 
-    protected void smartAppend (List<StringBuilder> lines, String appendage, int start, int end)
+    /**
+     * Writes the escaped value of a property, breaking it into continuation lines to keep them
+     * close to {@link #SOFT_MAX_COLS}. Only the column and the last two characters of the
+     * current line are tracked, so each appended character is visited a constant number of
+     * times.
+     */
+    protected static class LineWrapper
     {
-        // sometimes this happens if a strings ends in \n
-        if (start == end) {
-            return;
+        public LineWrapper (Writer writer)
+        {
+            _writer = writer;
         }
 
-        // start by trying to append to the last line
-        StringBuilder last = lines.get(lines.size() - 1);
-
-        // if it ends with \n already, just copy the spaces and append the rest to a new line
-        if (last.length() >= 2 && last.lastIndexOf("\\n") == last.length() - 2) {
-            while (start < end && appendage.charAt(start) == ' ') {
-                last.append(' ');
-                start++;
-            }
-            newLine(lines);
-            smartAppend(lines, appendage, start, end);
-            return;
+        public void append (String appendage)
+            throws IOException
+        {
+            append(appendage, 0, appendage.length());
         }
 
-        // safe to append without exceeding soft limit
-        if (last.length() + end - start <= SOFT_MAX_COLS) {
-            last.append(appendage, start, end);
-            return;
-        }
+        public void append (String appendage, int start, int end)
+            throws IOException
+        {
+            while (start < end) {
+                // if the line ends with \n already, just copy the spaces and start a new line
+                if (_last == 'n' && _penultimate == '\\') {
+                    start = appendSpaces(appendage, start, end);
+                    newLine();
+                    continue;
+                }
 
-        // try not to dangle short bits onto the next line (that can still happen though)
-        if (end - start < TOLERANCE) {
-            last.append(appendage, start, end);
-            return;
-        }
+                // safe to append without exceeding soft limit, or too short to be worth
+                // dangling onto the next line (that can still happen though)
+                if (_col + end - start <= SOFT_MAX_COLS || end - start < TOLERANCE) {
+                    write(appendage, start, end);
+                    return;
+                }
 
-        // find the last space that would get us under the soft limit
-        int breakPos = appendage.lastIndexOf(' ',
-            Math.min(end - 1, start + SOFT_MAX_COLS - last.length()));
+                // find the last space that would get us under the soft limit
+                int breakPos = -1;
+                for (int ii = Math.min(end - 1, start + SOFT_MAX_COLS - _col); ii >= start; ii--) {
+                    if (appendage.charAt(ii) == ' ') {
+                        breakPos = ii;
+                        break;
+                    }
+                }
 
-        // not enough room, put it on a new line (unless we are already at the beginning of a
-        // line, in which case just append it
-        if (breakPos < start) {
-            if (last.length() == INDENT.length() && last.indexOf(INDENT) == 0) {
-                last.append(appendage, start, end);
-                return;
-            }
-            // we have to cope with spaces here
-            while (appendage.charAt(start) == ' ' && start < end) {
-                last.append(' ');
-                start++;
+                // not enough room, put it on a new line (unless we are already at the beginning
+                // of a line, in which case just append it)
+                if (breakPos == -1) {
+                    if (_fresh) {
+                        write(appendage, start, end);
+                        return;
+                    }
+                    start = appendSpaces(appendage, start, end);
+                    newLine();
+                    continue;
+                }
+
+                // just in case the space is the first in a sequence, move up to just after the
+                // last one
+                while (breakPos < end && appendage.charAt(breakPos) == ' ') {
+                    breakPos++;
+                }
+
+                // append up to the break and put the rest, if any, on a new line
+                write(appendage, start, breakPos);
+                start = breakPos;
+                if (start < end) {
+                    newLine();
+                }
             }
-            newLine(lines);
-            smartAppend(lines, appendage, start, end);
-            return;
         }
 
-        // just in case the space is the first in a sequence, move up to just after the last one
-        while (breakPos < end && appendage.charAt(breakPos) == ' ') {
-            breakPos++;
+        protected int appendSpaces (String appendage, int start, int end)
+            throws IOException
+        {
+            int spaces = start;
+            while (spaces < end && appendage.charAt(spaces) == ' ') {
+                spaces++;
+            }
+            write(appendage, start, spaces);
+            return spaces;
         }
 
-        // finally, append up to the break
-        last.append(appendage, start, breakPos);
+        protected void newLine ()
+            throws IOException
+        {
+            _writer.write('\\');
+            _writer.write(LINE_SEPARATOR);
+            _writer.write(INDENT);
+            _col = INDENT.length();
+            _last = _penultimate = 0;
+            _fresh = true;
+        }
 
-        // if there is more, put it on a new line
-        if (end > breakPos) {
-            newLine(lines);
-            smartAppend(lines, appendage, breakPos, end);
+        protected void write (String appendage, int start, int end)
+            throws IOException
+        {
+            if (start == end) {
+                return;
+            }
+            _writer.write(appendage, start, end - start);
+            _col += end - start;
+            _penultimate = end - start > 1 ? appendage.charAt(end - 2) : _last;
+            _last = appendage.charAt(end - 1);
+            _fresh = false;
         }
+
+        protected Writer _writer;
+        protected int _col;
+        protected char _last, _penultimate;
+        protected boolean _fresh;
     }
 
-    protected void newLine (List<StringBuilder> lines)
+    /**
+     * Replaces the contents of a file with the given bytes, unless they are already the same.
+     * The new contents are written to a temporary file in the same directory and renamed into
+     * place so that readers never see a partially written file.
+     * @return true if the file was created or changed
+     */
+    public static boolean replaceIfChanged (File output, byte[] content)
+        throws IOException
     {
-        lines.get(lines.size() - 1).append("\\");
-        lines.add(new StringBuilder(INDENT));
+        if (output.isFile() && output.length() == content.length &&
+                Arrays.equals(Files.toByteArray(output), content)) {
+            return false;
+        }
+
+        FileUtil.replace(output, content, false);
+        return true;
     }
 
     protected void read (BufferedReader in)
@@ -410,6 +534,8 @@ public class PropsFile
     protected static final String INDENT = "  ";
     protected static final int SOFT_MAX_COLS = 95;
     protected static final int TOLERANCE = 25;
+    protected static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    protected static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
     static {
         START_PATS.put(RE_BANNER, LineType.BANNER);
@@ -0,0 +1,116 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate.spreadsheet;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Reads records from comma separated values as exported by google spreadsheets. Fields may be
+ * quoted with double quotes, in which case they may contain separators, line breaks and doubled
+ * quotes. Records end with a line feed, optionally preceded by a carriage return. The input is
+ * read in blocks and each character is visited once.
+ */
+public class CsvReader
+{
+    /**
+     * Creates a new reader of the given input, with fields separated by the given character.
+     */
+    public CsvReader (Reader in, char separator)
+    {
+        _in = in;
+        _separator = separator;
+    }
+
+    /**
+     * Reads the next record.
+     * @return the fields of the record, or null if the end of the input has been reached
+     */
+    public List<String> readRecord ()
+        throws IOException
+    {
+        if (peek() == -1) {
+            return null;
+        }
+        List<String> fields = Lists.newArrayList();
+        while (true) {
+            fields.add(readField());
+            int c = next();
+            if (c == _separator) {
+                continue;
+            }
+            if (c == '\r' && peek() == '\n') {
+                next();
+            }
+            return fields;
+        }
+    }
+
+    /**
+     * Reads the field at the current position, leaving the separator or line end following it.
+     */
+    protected String readField ()
+        throws IOException
+    {
+        _field.setLength(0);
+        if (peek() != '"') {
+            for (int c = peek(); c != -1 && c != _separator && c != '\n' && c != '\r';
+                    c = peek()) {
+                _field.append((char)next());
+            }
+            return _field.toString();
+        }
+
+        next();
+        while (true) {
+            int c = next();
+            if (c == -1) {
+                throw new IOException("Unterminated quoted field");
+            }
+            if (c == '"') {
+                if (peek() != '"') {
+                    break;
+                }
+                next();
+            }
+            _field.append((char)c);
+        }
+        return _field.toString();
+    }
+
+    protected int peek ()
+        throws IOException
+    {
+        if (_pos == _limit) {
+            _limit = _in.read(_buffer, 0, _buffer.length);
+            _pos = 0;
+            if (_limit <= 0) {
+                _limit = 0;
+                return -1;
+            }
+        }
+        return _buffer[_pos];
+    }
+
+    protected int next ()
+        throws IOException
+    {
+        int c = peek();
+        if (c != -1) {
+            _pos++;
+        }
+        return c;
+    }
+
+    protected final Reader _in;
+    protected final char _separator;
+    protected final char[] _buffer = new char[8192];
+    protected final StringBuilder _field = new StringBuilder();
+    protected int _pos, _limit;
+}
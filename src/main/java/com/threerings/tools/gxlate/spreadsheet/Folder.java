@@ -7,49 +7,77 @@ package com.threerings.tools.gxlate.spreadsheet;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.List;
 
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.gdata.client.GoogleService;
+import com.google.gdata.client.Query;
 import com.google.gdata.client.docs.DocsService;
 import com.google.gdata.client.spreadsheet.SpreadsheetService;
 import com.google.gdata.data.Category;
 import com.google.gdata.data.ILink;
+import com.google.gdata.data.Link;
 import com.google.gdata.data.docs.DocumentListEntry;
 import com.google.gdata.data.docs.DocumentListFeed;
+import com.google.gdata.data.spreadsheet.SpreadsheetFeed;
 import com.google.gdata.data.spreadsheet.WorksheetEntry;
 import com.google.gdata.data.spreadsheet.WorksheetFeed;
 import com.google.gdata.util.AuthenticationException;
 import com.google.gdata.util.ServiceException;
 
 /**
- * Provides access to google documents, spreadsheets and worksheets in a folder.
+ * Provides access to google documents, spreadsheets and worksheets in a folder. The contents of
+ * the folder are only listed when first needed, spreadsheets whose keys are known can be used
+ * without listing it at all.
  */
 public class Folder
 {
     /**
-     * Queries the contents of the given google doc folder and returns a new folder instance.
+     * Logs into google docs and returns a new folder instance for the given folder.
      */
     public static Folder open (String appName, String user, String password, String folderId)
         throws AuthenticationException, ServiceException, IOException
     {
-        DocsService docs = new DocsService(appName);
-        docs.setUserCredentials(user, password);
-        DocumentListFeed documentListFeed = docs.getFeed(new URL(
-            "https://docs.google.com/feeds/default/private/full/folder%3A" + folderId
-                + "/contents"), DocumentListFeed.class);
-        Iterable<DocumentListEntry> contents = documentListFeed.getEntries();
-        SpreadsheetService spreadsheets = new SpreadsheetService(appName);
-        spreadsheets.setUserCredentials(user, password);
-
-        return new Folder(Iterables.filter(contents, Predicates.not(DELETED)), spreadsheets);
+        return open(appName, user, password, folderId, null);
     }
 
     /**
-     * Gets the documents in the folder.
+     * Logs into google docs and returns a new folder instance for the given folder.
+     * @param folderId the id of the folder, or null if only spreadsheets with known keys will be
+     * used
+     * @param tokens the cache of authentication tokens to use, or null to log in afresh
      */
-    public Iterable<DocumentListEntry> getDocuments ()
+    public static Folder open (String appName, String user, String password, String folderId,
+        TokenCache tokens)
+        throws AuthenticationException, ServiceException, IOException
+    {
+        Folder folder = new Folder(folderId, new DocsService(appName),
+            new SpreadsheetService(appName), user, password, tokens);
+        boolean cached = folder.login(folder._docsService);
+        if (folder.login(folder._spreadsheets) || cached) {
+            folder.checkLogin();
+        }
+        return folder;
+    }
+
+    /**
+     * Gets the documents in the folder, listing its contents the first time.
+     */
+    public synchronized Iterable<DocumentListEntry> getDocuments ()
+        throws ServiceException, IOException
     {
+        if (_docs == null) {
+            if (_folderId == null) {
+                throw new IllegalStateException("No folder id given");
+            }
+            URL url = new URL(DOCS_URL + "folder%3A" + _folderId + "/contents");
+            DocumentListFeed feed = _docsService.getFeed(url, DocumentListFeed.class);
+            _docs = Lists.newArrayList(
+                Iterables.filter(feed.getEntries(), Predicates.not(DELETED)));
+        }
         return _docs;
     }
 
@@ -57,8 +85,36 @@ public class Folder
      * Gets the documents in the folder that are spreadsheets.
      */
     public Iterable<DocumentListEntry> getSpreadsheets ()
+        throws ServiceException, IOException
     {
-        return Iterables.filter(_docs, IS_SPREADSHEET);
+        return Iterables.filter(getDocuments(), IS_SPREADSHEET);
+    }
+
+    /**
+     * Finds the key of the spreadsheet in the folder with the given name. If the cache has a
+     * key for it, that spreadsheet's entry alone is fetched to check that it still has the name,
+     * is in the folder and is not in the trash. Otherwise the folder is listed and the key found
+     * is added to the cache.
+     * @param cache the keys found previously, or null to always list the folder
+     * @return the key, or null if there is no such spreadsheet in the folder
+     */
+    public String findSpreadsheetKey (String name, SpreadsheetKeys cache)
+        throws ServiceException, IOException
+    {
+        String key = cache == null ? null : cache.get(_folderId, name);
+        if (key != null && isSpreadsheet(key, name)) {
+            return key;
+        }
+        for (DocumentListEntry entry : getSpreadsheets()) {
+            if (entry.getTitle().getPlainText().equals(name)) {
+                key = entry.getDocId();
+                if (cache != null) {
+                    cache.put(_folderId, name, key);
+                }
+                return key;
+            }
+        }
+        return null;
     }
 
     /**
@@ -73,6 +129,27 @@ public class Folder
         return feed.getEntries();
     }
 
+    /**
+     * Gets the worksheets (tabs) in the spreadsheet with the given key, which need not be in the
+     * folder.
+     */
+    public Iterable<WorksheetEntry> getWorksheets (String spreadsheetKey)
+        throws IOException, ServiceException
+    {
+        return _spreadsheets.getFeed(getWorksheetsUrl(spreadsheetKey), WorksheetFeed.class)
+            .getEntries();
+    }
+
+    /**
+     * Gets the address of the feed of worksheets of the spreadsheet with the given key, to
+     * which new worksheets may be posted.
+     */
+    public URL getWorksheetsUrl (String spreadsheetKey)
+        throws IOException
+    {
+        return new URL(SPREADSHEETS_URL + spreadsheetKey + "/private/full");
+    }
+
     /**
      * Gets the underlying service for accessing the document.
      */
@@ -82,10 +159,75 @@ public class Folder
     }
 
     // internal, use factory
-    private Folder (Iterable<DocumentListEntry> docs, SpreadsheetService spreadsheets)
+    private Folder (String folderId, DocsService docs, SpreadsheetService spreadsheets,
+        String user, String password, TokenCache tokens)
     {
-        _docs = docs;
+        _folderId = folderId;
+        _docsService = docs;
         _spreadsheets = spreadsheets;
+        _user = user;
+        _password = password;
+        _tokens = tokens;
+    }
+
+    /**
+     * Checks that the spreadsheet with the given key has the given name and is in this folder.
+     */
+    private boolean isSpreadsheet (String key, String name)
+        throws IOException
+    {
+        URL url = new URL(DOCS_URL + "spreadsheet%3A" + key);
+        DocumentListEntry entry;
+        try {
+            entry = _docsService.getEntry(url, DocumentListEntry.class);
+        } catch (ServiceException ex) {
+            return false; // deleted, or no longer shared with us
+        }
+        if (DELETED.apply(entry) || !entry.getTitle().getPlainText().equals(name)) {
+            return false;
+        }
+        for (Link parent : entry.getParentLinks()) {
+            if (parent.getHref().endsWith(_folderId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Authenticates a service, using the token cache if there is one.
+     * @return true if a cached token was used
+     */
+    private boolean login (GoogleService service)
+        throws AuthenticationException
+    {
+        if (_tokens == null) {
+            service.setUserCredentials(_user, _password);
+            return false;
+        }
+        return _tokens.login(service, _user, _password);
+    }
+
+    /**
+     * Makes the smallest authenticated request of each service, and logs both in afresh if either
+     * is refused. Cached tokens are checked this way before anything else is fetched, since the
+     * tables opened from this folder make their requests directly with the spreadsheet service.
+     */
+    private void checkLogin ()
+        throws ServiceException, IOException
+    {
+        try {
+            Query query = new Query(new URL(DOCS_URL));
+            query.setMaxResults(1);
+            _docsService.query(query, DocumentListFeed.class);
+            query = new Query(new URL(SPREADSHEETS_FEED_URL));
+            query.setMaxResults(1);
+            _spreadsheets.query(query, SpreadsheetFeed.class);
+        } catch (AuthenticationException ex) {
+            // a cached token has been revoked, so the other one probably has been too
+            _tokens.refresh(_docsService, _user, _password);
+            _tokens.refresh(_spreadsheets, _user, _password);
+        }
     }
 
     private static final Predicate<DocumentListEntry> DELETED = new Predicate<DocumentListEntry>() {
@@ -107,6 +249,16 @@ public class Folder
         }
     };
 
-    private Iterable<DocumentListEntry> _docs;
-    private SpreadsheetService _spreadsheets;
+    private final String _folderId;
+    private final DocsService _docsService;
+    private final SpreadsheetService _spreadsheets;
+    private final String _user, _password;
+    private final TokenCache _tokens;
+    private List<DocumentListEntry> _docs;
+
+    private static final String DOCS_URL = "https://docs.google.com/feeds/default/private/full/";
+    private static final String SPREADSHEETS_URL =
+        "https://spreadsheets.google.com/feeds/worksheets/";
+    private static final String SPREADSHEETS_FEED_URL =
+        "https://spreadsheets.google.com/feeds/spreadsheets/private/full";
 }
@@ -12,7 +12,6 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.gdata.data.spreadsheet.CellEntry;
 
 /**
  * Allows access to the rows of a {@link Table} using a tuple of column values.
@@ -168,28 +167,25 @@ public class Index
     }
 
     /**
-     * Finds the row belonging to the given key, or null if no such row exists.
+     * Finds the row belonging to the given key, or null if no such row exists. Does not modify
+     * the index, so may be called from multiple threads.
      */
     public Row lookup (Key key)
     {
         Row row = _rows.get(key);
-        if (row != null && row.isDeleted()) {
-            _rows.remove(key);
-            row = null;
-        }
-        return row;
+        return row != null && row.isDeleted() ? null : row;
     }
 
     private Key key (Row row, List<Error> errors)
     {
         List<String> key = Lists.newArrayListWithExpectedSize(_headers.length);
         for (String header : _headers) {
-            CellEntry cell = row.getCellEntry(header);
-            if (cell == null) {
+            String value = row.getValues().get(header);
+            if (value == null) {
                 errors.add(new MissingCellError(row, header));
                 continue;
             }
-            key.add(cell.getCell().getValue());
+            key.add(value);
         }
         return key.size() == _headers.length ? new Key(key) : null;
     }
@@ -5,10 +5,11 @@
 
 package com.threerings.tools.gxlate.spreadsheet;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-import com.google.common.base.Function;
 import com.google.common.collect.Maps;
 import com.google.gdata.data.spreadsheet.CellEntry;
 
@@ -18,20 +19,20 @@ import com.google.gdata.data.spreadsheet.CellEntry;
 public class Row
 {
     /**
-     * Gets a map of column headers to the cell values for this row. Backed by the underlying
-     * google doc entry data.
+     * Gets a map of column headers to the cell values for this row.
      */
     public Map<String, String> getValues ()
     {
-        return _stringValues;
+        return _readOnlyValues;
     }
 
     /**
-     * Gets the cell value entry corresponding a given column header.
+     * Gets the cell value entry corresponding a given column header. This is null if the cell is
+     * empty or the row was not loaded from the cell feed.
      */
     public CellEntry getCellEntry (String key)
     {
-        return _values.get(key);
+        return _cells.get(key);
     }
 
     /**
@@ -53,25 +54,35 @@ public class Row
     // internal method called during table construction
     Row (int num, List<String> headers, List<CellEntry> cells)
     {
-        _num = num;
-        _values = Maps.newHashMapWithExpectedSize(cells.size());
+        this(num, Maps.<String, String>newHashMap());
         for (CellEntry cell : cells) {
+            // cells in columns without a header can't be looked up anyway
             String header = headers.get(cell.getCell().getCol() - 1);
-            _values.put(header, cell);
+            if (header != null) {
+                newCellInserted(header, cell);
+            }
         }
+    }
 
-        _stringValues = Maps.transformValues(_values, new Function<CellEntry, String>() {
-            @Override
-            public String apply (CellEntry entry)
-            {
-                return entry != null ? entry.getCell().getValue() : null;
-            }
-        });
+    // internal method called during table construction, for rows without cell entries
+    Row (int num, Map<String, String> values)
+    {
+        _num = num;
+        // cells may be inserted while other threads are reading values
+        _values = new ConcurrentHashMap<String, String>(values);
+        _readOnlyValues = Collections.unmodifiableMap(_values);
+        _cells = new ConcurrentHashMap<String, CellEntry>();
     }
 
-    void newCellInserted(String key, CellEntry cell)
+    void newCellInserted (String key, CellEntry cell)
     {
-        _values.put(key, cell);
+        _cells.put(key, cell);
+        String value = cell.getCell().getValue();
+        if (value != null) {
+            _values.put(key, value);
+        } else {
+            _values.remove(key);
+        }
     }
 
     void setDeleted ()
@@ -85,7 +96,8 @@ public class Row
     }
 
     private int _num;
-    private Map<String, CellEntry> _values;
-    private Map<String, String> _stringValues;
+    private Map<String, String> _values;
+    private Map<String, String> _readOnlyValues;
+    private Map<String, CellEntry> _cells;
     private boolean _deleted;
 }
@@ -0,0 +1,134 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate.spreadsheet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.threerings.tools.gxlate.util.FileUtil;
+import com.threerings.tools.gxlate.util.StreamUtil;
+
+/**
+ * Saves the tables of a spreadsheet to a compact local file and loads them back, so that goals
+ * which only read the spreadsheet can run without network access. The file is a gzipped
+ * sequence of worksheets, each with its headers and the non-empty cells of its rows. Loaded
+ * tables are read-only.
+ */
+public class Snapshot
+{
+    /**
+     * Writes the given tables, keyed by worksheet name, to a file.
+     */
+    public static void save (File file, Map<String, Table> tables)
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(tables.size());
+            for (Map.Entry<String, Table> entry : tables.entrySet()) {
+                StreamUtil.writeString(out, entry.getKey());
+                write(out, entry.getValue());
+            }
+        } finally {
+            out.close();
+        }
+        FileUtil.replace(file, bytes.toByteArray(), false);
+    }
+
+    /**
+     * Reads the tables from a file previously written by {@link #save}.
+     * @return the tables, keyed by worksheet name, in the order they were saved
+     */
+    public static Map<String, Table> load (File file)
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new GZIPInputStream(new FileInputStream(file))));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a spreadsheet snapshot: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            Map<String, Table> tables = Maps.newLinkedHashMap();
+            for (int ii = in.readInt(); ii > 0; ii--) {
+                String name = StreamUtil.readString(in);
+                tables.put(name, read(in));
+            }
+            return tables;
+        } finally {
+            in.close();
+        }
+    }
+
+    protected static void write (DataOutputStream out, Table table)
+        throws IOException
+    {
+        List<String> headers = table.getHeaders();
+        out.writeInt(headers.size());
+        for (String header : headers) {
+            StreamUtil.writeString(out, header);
+        }
+
+        List<Row> rows = Lists.newArrayList();
+        for (Row row : table.getRows()) {
+            if (row != null && !row.isDeleted()) {
+                rows.add(row);
+            }
+        }
+        out.writeInt(rows.size());
+        for (Row row : rows) {
+            Map<String, String> values = row.getValues();
+            out.writeInt(row.getNum());
+            out.writeInt(values.size());
+            for (Map.Entry<String, String> value : values.entrySet()) {
+                out.writeInt(headers.indexOf(value.getKey()));
+                StreamUtil.writeString(out, value.getValue());
+            }
+        }
+    }
+
+    protected static Table read (DataInputStream in)
+        throws IOException
+    {
+        List<String> headers = Lists.newArrayList();
+        for (int ii = in.readInt(); ii > 0; ii--) {
+            headers.add(StreamUtil.readString(in));
+        }
+
+        List<Row> rows = Lists.newArrayList();
+        for (int ii = in.readInt(); ii > 0; ii--) {
+            int num = in.readInt();
+            Map<String, String> values = Maps.newHashMap();
+            for (int jj = in.readInt(); jj > 0; jj--) {
+                values.put(headers.get(in.readInt()), StreamUtil.readString(in));
+            }
+            // data rows start at 2 in the doc but from zero in the table
+            Table.growAndSet(rows, num - 2, new Row(num, values));
+        }
+        return new Table(headers, rows);
+    }
+
+    protected static final int MAGIC = 0x67786c73; // "gxls"
+    protected static final int VERSION = 1;
+}
@@ -0,0 +1,109 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate.spreadsheet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import com.threerings.tools.gxlate.util.FileUtil;
+
+/**
+ * Remembers the keys of spreadsheets found by name in a folder, in a local file, so that later
+ * builds can open them without listing the folder. Keys may go stale, so callers check that a
+ * remembered spreadsheet still has the name and is still in the folder, see
+ * {@link Folder#findSpreadsheetKey}.
+ */
+public class SpreadsheetKeys
+{
+    /**
+     * Creates a cache of keys kept in the given file.
+     */
+    public SpreadsheetKeys (File file)
+    {
+        _file = file;
+    }
+
+    /**
+     * Gets the remembered key of the spreadsheet with the given name in a folder, or null.
+     */
+    public synchronized String get (String folderId, String name)
+    {
+        return load().get(folderId + "/" + name);
+    }
+
+    /**
+     * Remembers the key of the spreadsheet with the given name in a folder. Failing to write the
+     * file is not an error, the folder will just be listed again next time.
+     */
+    public synchronized void put (String folderId, String name, String key)
+    {
+        Map<String, String> keys = load();
+        keys.put(folderId + "/" + name, key);
+        try {
+            save(keys);
+        } catch (IOException ex) {
+            // oh well
+        }
+    }
+
+    /**
+     * Reads the keys from the file. A missing or unreadable file has none.
+     */
+    protected Map<String, String> load ()
+    {
+        Map<String, String> keys = Maps.newHashMap();
+        if (!_file.exists()) {
+            return keys;
+        }
+        try {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(_file)));
+            try {
+                if (in.readInt() != VERSION) {
+                    return keys;
+                }
+                for (int ii = in.readInt(); ii > 0; ii--) {
+                    String name = in.readUTF();
+                    keys.put(name, in.readUTF());
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            keys.clear();
+        }
+        return keys;
+    }
+
+    /**
+     * Writes the keys to the file.
+     */
+    protected void save (Map<String, String> keys)
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(VERSION);
+        out.writeInt(keys.size());
+        for (Map.Entry<String, String> entry : keys.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+        FileUtil.replace(_file, bytes.toByteArray(), false);
+    }
+
+    protected final File _file;
+
+    protected static final int VERSION = 1;
+}
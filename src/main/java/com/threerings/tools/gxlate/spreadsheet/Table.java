@@ -6,6 +6,9 @@
 package com.threerings.tools.gxlate.spreadsheet;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
@@ -13,10 +16,18 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.gdata.client.spreadsheet.CellQuery;
+import com.google.gdata.data.Link;
+import com.google.gdata.data.batch.BatchOperationType;
+import com.google.gdata.data.batch.BatchStatus;
+import com.google.gdata.data.batch.BatchUtils;
 import com.google.gdata.data.spreadsheet.CellEntry;
 import com.google.gdata.data.spreadsheet.CellFeed;
 import com.google.gdata.data.spreadsheet.ListEntry;
@@ -37,7 +48,9 @@ public class Table
      */
     public static String googleNow ()
     {
-        return DATE_FORMAT.format(new Date());
+        synchronized (DATE_FORMAT) {
+            return DATE_FORMAT.format(new Date());
+        }
     }
 
     /**
@@ -52,6 +65,137 @@ public class Table
         process(worksheet.getService().getFeed(worksheet.getCellFeedUrl(), CellFeed.class));
     }
 
+    /**
+     * Creates a new table from the given worksheet entry by downloading the worksheet in CSV
+     * form, which is a small fraction of the size of the cell feed. The rows have no cell
+     * entries, so each cell is queried when it is first updated. This is best for tables that
+     * are mostly read.
+     * @param spreadsheetKey the key of the spreadsheet containing the worksheet
+     */
+    public static Table export (WorksheetEntry worksheet, String spreadsheetKey)
+        throws ServiceException, IOException
+    {
+        String url = String.format(EXPORT_URL, spreadsheetKey, getGridId(worksheet));
+        InputStream in = worksheet.getService().getStreamFromLink(new Link(null, "text/csv", url));
+        try {
+            Table table = read(new CsvReader(new InputStreamReader(in, Charsets.UTF_8), ','));
+            table._worksheet = worksheet;
+            return table;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Creates a table without a worksheet from records of cell values. The first record has the
+     * headers and the rest are the data rows, with blank records for empty rows.
+     */
+    static Table read (CsvReader reader)
+        throws IOException
+    {
+        List<String> record = reader.readRecord();
+        if (record == null) {
+            throw new IOException("Missing header row");
+        }
+        List<String> headers = Lists.newArrayListWithExpectedSize(record.size());
+        for (String header : record) {
+            headers.add(header.isEmpty() ? null : header);
+        }
+
+        // as with the cell feed, leave out empty cells and empty rows
+        List<Row> rows = Lists.newArrayList();
+        for (int num = 2; (record = reader.readRecord()) != null; num++) {
+            Map<String, String> values = Maps.newHashMap();
+            for (int ii = 0, nn = Math.min(record.size(), headers.size()); ii < nn; ii++) {
+                String value = record.get(ii);
+                if (!value.isEmpty() && headers.get(ii) != null) {
+                    values.put(headers.get(ii), value);
+                }
+            }
+            if (!values.isEmpty()) {
+                growAndSet(rows, num - 2, new Row(num, values));
+            }
+        }
+        return new Table(headers, rows);
+    }
+
+    /**
+     * Creates a read-only table from previously downloaded headers and rows, for example from a
+     * {@link Snapshot}. Row numbers must start at 2 and the list of rows may have gaps (nulls)
+     * for empty rows.
+     */
+    Table (List<String> headers, List<Row> rows)
+    {
+        _headers = headers;
+        _rows = rows;
+    }
+
+    /**
+     * Returns true if the table was downloaded from a worksheet and may be modified. Tables
+     * loaded from a snapshot are read-only.
+     */
+    public boolean isEditable ()
+    {
+        return _worksheet != null;
+    }
+
+    /**
+     * Returns true if any of the write methods have been called, in which case the table may no
+     * longer match the worksheet as others would download it.
+     */
+    public boolean isModified ()
+    {
+        return _modified;
+    }
+
+    /**
+     * Gets the version of a worksheet entry, the time at which the worksheet was last changed.
+     */
+    public static String getVersion (WorksheetEntry worksheet)
+    {
+        return String.valueOf(worksheet.getUpdated().getValue());
+    }
+
+    /**
+     * Fetches the entry of the table's worksheet again, so that it reflects all the changes
+     * written so far, and returns its version.
+     */
+    public String fetchVersion ()
+        throws ServiceException, IOException
+    {
+        _worksheet = _worksheet.getService().getEntry(
+            new URL(_worksheet.getSelfLink().getHref()), WorksheetEntry.class);
+        return getVersion(_worksheet);
+    }
+
+    /**
+     * Replaces the entry of the worksheet the table was downloaded from with a more recent one
+     * for the same worksheet, so that writes which update the entry itself, such as enlarging
+     * the worksheet, don't conflict with changes made since the table was downloaded.
+     */
+    public void setWorksheet (WorksheetEntry worksheet)
+    {
+        requireEditable();
+        _worksheet = worksheet;
+    }
+
+    /**
+     * Sets a listener to be run whenever one of the write methods is called, before the write
+     * is made. Used to stop sharing the table once it no longer matches the worksheet.
+     */
+    public void setModifiedListener (Runnable listener)
+    {
+        _modifiedListener = listener;
+    }
+
+    /**
+     * Gets the column headers of the table, in column order. Columns without a header are null.
+     */
+    public List<String> getHeaders ()
+    {
+        return Collections.unmodifiableList(_headers);
+    }
+
     /**
      * Gets the data rows (number 2 and up) in the table.
      */
@@ -68,6 +212,8 @@ public class Table
     public void addNewRow (Map<String, String> values)
         throws ServiceException, IOException
     {
+        requireEditable();
+        markModified();
         ListEntry newEntry = new ListEntry();
         for (Map.Entry<String, String> entry : values.entrySet()) {
             newEntry.getCustomElements().setValueLocal(entry.getKey(), entry.getValue());
@@ -76,6 +222,40 @@ public class Table
         _addedRows++;
     }
 
+    /**
+     * Adds new rows to the table using the given column values, in order. The cells are written
+     * in batches, which takes far fewer requests than adding the rows one at a time, and the
+     * worksheet is enlarged first if necessary. As with {@link #addNewRow}, call
+     * {@link #refreshAddedRows()} afterwards to update the internal structures.
+     */
+    public void addNewRows (List<Map<String, String>> rows)
+        throws ServiceException, IOException
+    {
+        requireEditable();
+        markModified();
+        if (rows.isEmpty()) {
+            return;
+        }
+        int first = _rows.size() + _addedRows + 2, last = first + rows.size() - 1;
+        if (last > _worksheet.getRowCount()) {
+            _worksheet.setRowCount(last);
+            _worksheet = _worksheet.update();
+        }
+
+        List<CellChange> changes = Lists.newArrayList();
+        for (int ii = 0; ii < rows.size(); ii++) {
+            for (Map.Entry<String, String> entry : rows.get(ii).entrySet()) {
+                changes.add(new CellChange(null, first + ii, entry.getKey(), entry.getValue()));
+            }
+        }
+        try {
+            batchUpdate(changes);
+        } finally {
+            // even if some cells failed, the rows are probably there now
+            _addedRows += rows.size();
+        }
+    }
+
     /**
      * Checks if any new rows have been added since the last refresh.
      */
@@ -94,6 +274,7 @@ public class Table
         if (_addedRows == 0) {
             return;
         }
+        requireEditable();
         CellQuery query = new CellQuery(_worksheet.getCellFeedUrl());
         query.setMinimumRow(_rows.size() + 2);
         query.setMaximumRow(_rows.size() + _addedRows + 1);
@@ -107,13 +288,15 @@ public class Table
      * @param key the column header
      * @param value the new value
      */
-    public void updateCell (Row row, String key, String value)
+    public synchronized void updateCell (Row row, String key, String value)
         throws ServiceException, IOException
     {
+        requireEditable();
+        markModified();
         CellEntry cell = row.getCellEntry(key);
         if (cell != null) {
             cell.changeInputValueLocal(value);
-            cell.update();
+            row.newCellInserted(key, cell.update());
             return;
         }
 
@@ -143,6 +326,27 @@ public class Table
         throw new ServiceException("Blank cell not returned by custom query");
     }
 
+    /**
+     * Updates a number of cells in the table, adding any that were previously empty. The cells
+     * are written in batches, which takes far fewer requests than calling
+     * {@link #updateCell} for each.
+     * @param values the new values of each row to update, keyed by column header
+     */
+    public synchronized void updateCells (Map<Row, Map<String, String>> values)
+        throws ServiceException, IOException
+    {
+        requireEditable();
+        markModified();
+        List<CellChange> changes = Lists.newArrayList();
+        for (Map.Entry<Row, Map<String, String>> row : values.entrySet()) {
+            for (Map.Entry<String, String> entry : row.getValue().entrySet()) {
+                changes.add(new CellChange(
+                    row.getKey(), row.getKey().getNum(), entry.getKey(), entry.getValue()));
+            }
+        }
+        batchUpdate(changes);
+    }
+
     /**
      * Deletes the rows with the given numbers. This has to download the whole spreadsheet so
      * the caller should try and batch all rows to delete at once. The verifier is consulted to
@@ -153,6 +357,8 @@ public class Table
     public void deleteRows (Collection<Integer> rows, DeleteVerifier verifier)
         throws ServiceException, IOException
     {
+        requireEditable();
+        markModified();
         ListFeed feed = _worksheet.getService().getFeed(_worksheet.getListFeedUrl(), ListFeed.class);
         int row = 1, deleted = 0;
         for (ListEntry entry : feed.getEntries()) {
@@ -202,6 +408,158 @@ public class Table
         }
     }
 
+    /**
+     * Works out the grid id used to export a worksheet from the last part of its id. Worksheet
+     * ids are the grid id in base 36, XOR'd with a fixed value that depends on their length.
+     */
+    private static int getGridId (WorksheetEntry worksheet)
+    {
+        String id = worksheet.getId();
+        id = id.substring(id.lastIndexOf('/') + 1);
+        return id.length() > 3 ? Integer.parseInt(id.substring(1), 36) ^ 474 :
+            Integer.parseInt(id, 36) ^ 31578;
+    }
+
+    /**
+     * Writes cell values with the batch interface of the cell feed. Cells whose entries have not
+     * been downloaded, including empty ones, are first queried in a batch of their own so that
+     * the update has their resource versions. A row's cells are always written in the same batch
+     * and none of them are written if any could not be queried. If some cells of a new row fail
+     * to update, those that did are cleared again, so that no row is left without its id.
+     * @param changes the changes, with those of each row together
+     * @throws ServiceException if any of the cells could not be written, after attempting all
+     * of them
+     */
+    private void batchUpdate (List<CellChange> changes)
+        throws ServiceException, IOException
+    {
+        URL batchUrl = new URL(_worksheet.getCellFeedUrl() + "/batch");
+        List<String> errors = Lists.newArrayList();
+        for (List<CellChange> batch : partitionRows(changes)) {
+            Set<Integer> failedRows = Sets.newHashSet();
+            CellFeed queries = new CellFeed();
+            for (int ii = 0; ii < batch.size(); ii++) {
+                CellChange change = batch.get(ii);
+                if (change.entry == null) {
+                    CellEntry query = new CellEntry(change.rowNum, change.colNum, "");
+                    query.setId(String.format("%s/R%dC%d",
+                        _worksheet.getCellFeedUrl(), change.rowNum, change.colNum));
+                    BatchUtils.setBatchId(query, String.valueOf(ii));
+                    BatchUtils.setBatchOperationType(query, BatchOperationType.QUERY);
+                    queries.getEntries().add(query);
+                }
+            }
+            if (!queries.getEntries().isEmpty()) {
+                for (CellEntry result :
+                        _worksheet.getService().batch(batchUrl, queries).getEntries()) {
+                    CellChange change = batch.get(Integer.parseInt(BatchUtils.getBatchId(result)));
+                    if (BatchUtils.isSuccess(result)) {
+                        change.entry = result;
+                    } else {
+                        errors.add(change.describe(BatchUtils.getBatchStatus(result)));
+                        failedRows.add(change.rowNum);
+                    }
+                }
+            }
+
+            CellFeed updates = new CellFeed();
+            for (int ii = 0; ii < batch.size(); ii++) {
+                CellChange change = batch.get(ii);
+                if (change.entry != null && !failedRows.contains(change.rowNum)) {
+                    change.entry.changeInputValueLocal(change.value);
+                    BatchUtils.setBatchId(change.entry, String.valueOf(ii));
+                    BatchUtils.setBatchOperationType(change.entry, BatchOperationType.UPDATE);
+                    updates.getEntries().add(change.entry);
+                }
+            }
+            if (updates.getEntries().isEmpty()) {
+                continue;
+            }
+            List<CellChange> written = Lists.newArrayList();
+            for (CellEntry result :
+                    _worksheet.getService().batch(batchUrl, updates).getEntries()) {
+                CellChange change = batch.get(Integer.parseInt(BatchUtils.getBatchId(result)));
+                if (!BatchUtils.isSuccess(result)) {
+                    errors.add(change.describe(BatchUtils.getBatchStatus(result)));
+                    failedRows.add(change.rowNum);
+                } else if (change.row != null) {
+                    change.row.newCellInserted(change.key, result);
+                } else {
+                    change.entry = result;
+                    written.add(change);
+                }
+            }
+
+            // clear the cells written to new rows that are missing some
+            CellFeed clears = new CellFeed();
+            for (CellChange change : written) {
+                if (failedRows.contains(change.rowNum)) {
+                    change.entry.changeInputValueLocal("");
+                    BatchUtils.setBatchId(change.entry, String.valueOf(clears.getEntries().size()));
+                    BatchUtils.setBatchOperationType(change.entry, BatchOperationType.UPDATE);
+                    clears.getEntries().add(change.entry);
+                }
+            }
+            if (clears.getEntries().isEmpty()) {
+                continue;
+            }
+            for (CellEntry result :
+                    _worksheet.getService().batch(batchUrl, clears).getEntries()) {
+                if (!BatchUtils.isSuccess(result)) {
+                    CellEntry entry = clears.getEntries().get(
+                        Integer.parseInt(BatchUtils.getBatchId(result)));
+                    errors.add(String.format("R%dC%d not cleared from partly written row",
+                        entry.getCell().getRow(), entry.getCell().getCol()));
+                }
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new ServiceException("Failed to update " + errors.size() + " cell(s): " +
+                Joiner.on("; ").join(errors));
+        }
+    }
+
+    /**
+     * Splits changes into batches of at most {@link #BATCH_SIZE} cells without splitting the
+     * changes of a row between batches, so that a row is either written or not.
+     */
+    private static List<List<CellChange>> partitionRows (List<CellChange> changes)
+    {
+        List<List<CellChange>> batches = Lists.newArrayList();
+        int start = 0, rowStart = 0;
+        for (int ii = 1; ii <= changes.size(); ii++) {
+            if (ii < changes.size() && changes.get(ii).rowNum == changes.get(ii - 1).rowNum) {
+                continue;
+            }
+            // a row ends here, start a new batch with it if it doesn't fit in the current one
+            if (ii - start > BATCH_SIZE && rowStart > start) {
+                batches.add(changes.subList(start, rowStart));
+                start = rowStart;
+            }
+            rowStart = ii;
+        }
+        if (start < changes.size()) {
+            batches.add(changes.subList(start, changes.size()));
+        }
+        return batches;
+    }
+
+    private void markModified ()
+    {
+        _modified = true;
+        Runnable listener = _modifiedListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    private void requireEditable ()
+    {
+        if (_worksheet == null) {
+            throw new IllegalStateException("Table is read-only");
+        }
+    }
+
     private int findColNum (String key)
     {
         int idx = _headers.indexOf(key);
@@ -254,10 +612,44 @@ public class Table
         list.set(idx, value);
     }
 
+    /**
+     * A new value for a cell, waiting to be written in a batch.
+     */
+    private class CellChange
+    {
+        final Row row;
+        final int rowNum, colNum;
+        final String key, value;
+        CellEntry entry;
+
+        CellChange (Row row, int rowNum, String key, String value)
+        {
+            this.row = row;
+            this.rowNum = rowNum;
+            this.colNum = findColNum(key);
+            this.key = key;
+            this.value = value;
+            entry = row == null ? null : row.getCellEntry(key);
+        }
+
+        String describe (BatchStatus status)
+        {
+            return String.format("R%dC%d (%s) %d %s", rowNum, colNum, key,
+                status.getCode(), status.getReason());
+        }
+    }
+
     private List<String> _headers;
     private List<Row> _rows;
     private WorksheetEntry _worksheet;
     private int _addedRows;
+    private volatile boolean _modified;
+    private volatile Runnable _modifiedListener;
+
+    private static final String EXPORT_URL = "https://spreadsheets.google.com/feeds/download/" +
+        "spreadsheets/Export?key=%s&exportFormat=csv&gid=%d";
+    /** The number of cells written in each batch request. */
+    private static final int BATCH_SIZE = 500;
 
     private static final DateFormat DATE_FORMAT = new SimpleDateFormat("MM/dd/yy HH:mm");
 }
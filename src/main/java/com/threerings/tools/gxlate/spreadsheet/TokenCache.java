@@ -0,0 +1,160 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate.spreadsheet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+import com.google.gdata.client.GoogleAuthTokenFactory;
+import com.google.gdata.client.GoogleService;
+import com.google.gdata.util.AuthenticationException;
+
+import com.threerings.tools.gxlate.util.FileUtil;
+
+/**
+ * Keeps the authentication tokens of google services in a local file, so that each service
+ * logs in at most once in the lifetime of a token rather than at the start of every goal.
+ * Tokens are keyed by the account and service only, so the file holds nothing derived from the
+ * password. A token revoked by a password change is refused by the service, upon which the
+ * caller logs in again with {@link #refresh}; until then a cached token is used whatever the
+ * password given. The file is only readable by its owner.
+ */
+public class TokenCache
+{
+    /**
+     * Creates a cache kept in the given file, whose tokens are used for the given time after
+     * they were issued.
+     */
+    public TokenCache (File file, long lifetimeMillis)
+    {
+        _file = file;
+        _lifetime = lifetimeMillis;
+    }
+
+    /**
+     * Authenticates a service, with a cached token if there is one that has not expired,
+     * otherwise by logging in and caching the resulting token.
+     * @return true if a cached token was used, in which case the caller should call
+     * {@link #refresh} if the service later rejects it
+     */
+    public synchronized boolean login (GoogleService service, String user, String password)
+        throws AuthenticationException
+    {
+        String key = key(service, user);
+        Token token = load().get(key);
+        if (token != null && System.currentTimeMillis() - token.issued < _lifetime) {
+            service.setUserToken(token.value);
+            return true;
+        }
+        refresh(service, user, password);
+        return false;
+    }
+
+    /**
+     * Logs a service in with the given credentials and caches the resulting token, replacing
+     * any previous one. Failing to write the cache is not an error, the token is just not
+     * reused.
+     */
+    public synchronized void refresh (GoogleService service, String user, String password)
+        throws AuthenticationException
+    {
+        service.setUserCredentials(user, password);
+        GoogleAuthTokenFactory.UserToken token =
+            (GoogleAuthTokenFactory.UserToken)service.getAuthTokenFactory().getAuthToken();
+        Map<String, Token> tokens = load();
+        tokens.put(key(service, user),
+            new Token(token.getValue(), System.currentTimeMillis()));
+        try {
+            save(tokens);
+        } catch (IOException ex) {
+            // oh well, it'll log in again next time
+        }
+    }
+
+    /**
+     * Reads the unexpired tokens from the file. A missing or unreadable file has none.
+     */
+    protected Map<String, Token> load ()
+    {
+        Map<String, Token> tokens = Maps.newHashMap();
+        if (!_file.exists()) {
+            return tokens;
+        }
+        try {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(_file)));
+            try {
+                if (in.readInt() != VERSION) {
+                    return tokens;
+                }
+                for (int ii = in.readInt(); ii > 0; ii--) {
+                    String key = in.readUTF();
+                    tokens.put(key, new Token(in.readUTF(), in.readLong()));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            tokens.clear();
+        }
+        long now = System.currentTimeMillis();
+        for (Iterator<Token> it = tokens.values().iterator(); it.hasNext(); ) {
+            if (now - it.next().issued >= _lifetime) {
+                it.remove();
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Writes the tokens to the file, readable only by its owner.
+     */
+    protected void save (Map<String, Token> tokens)
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(VERSION);
+        out.writeInt(tokens.size());
+        for (Map.Entry<String, Token> entry : tokens.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue().value);
+            out.writeLong(entry.getValue().issued);
+        }
+        FileUtil.replace(_file, bytes.toByteArray(), true);
+    }
+
+    protected static String key (GoogleService service, String user)
+    {
+        return service.getClass().getName() + "\n" + user;
+    }
+
+    /** A cached token and when it was issued. */
+    protected static class Token
+    {
+        public final String value;
+        public final long issued;
+
+        public Token (String value, long issued)
+        {
+            this.value = value;
+            this.issued = issued;
+        }
+    }
+
+    protected final File _file;
+    protected final long _lifetime;
+
+    protected static final int VERSION = 2;
+}
@@ -0,0 +1,58 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.google.common.io.Files;
+
+/**
+ * File utility methods.
+ */
+public class FileUtil
+{
+    /**
+     * Replaces the contents of a file, creating it and its directory if need be. The contents
+     * are written to a temporary file in the same directory which is then renamed into place,
+     * so that readers, including concurrent builds, never see a partially written file.
+     * @param ownerOnly if set, the file is made readable and writable only by its owner
+     */
+    public static void replace (File file, byte[] content, boolean ownerOnly)
+        throws IOException
+    {
+        File dir = makeDirs(file.getAbsoluteFile().getParentFile());
+        File temp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            if (ownerOnly) {
+                temp.setReadable(false, false);
+                temp.setReadable(true, true);
+                temp.setWritable(false, false);
+                temp.setWritable(true, true);
+            }
+            Files.write(content, temp);
+            // renaming over an existing file fails on some platforms
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+                throw new IOException("Unable to replace " + file + " with " + temp);
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Creates a directory, and any missing parents, if it does not exist yet.
+     * @return the directory
+     */
+    public static File makeDirs (File dir)
+        throws IOException
+    {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        return dir;
+    }
+}
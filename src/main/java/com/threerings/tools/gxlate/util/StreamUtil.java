@@ -0,0 +1,49 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Reading and writing of the values in our binary file formats.
+ */
+public class StreamUtil
+{
+    /**
+     * Writes a string, which may be null, as UTF-8 with an int length. Unlike
+     * {@link DataOutputStream#writeUTF}, this copes with strings of any length.
+     */
+    public static void writeString (DataOutputStream out, String str)
+        throws IOException
+    {
+        if (str == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = str.getBytes(Charsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString}.
+     */
+    public static String readString (DataInputStream in)
+        throws IOException
+    {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,90 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * Tests saving the build state and loading it back, including from damaged files.
+ */
+public class BuildStateTest extends TestCase
+{
+    @Override protected void setUp ()
+        throws Exception
+    {
+        _file = File.createTempFile("state", ".bin");
+        _file.delete();
+    }
+
+    @Override protected void tearDown ()
+        throws Exception
+    {
+        _file.delete();
+    }
+
+    public void testRoundTrip ()
+        throws IOException
+    {
+        assertNull(BuildState.load(_file, LOG).get("a"));
+        BuildState state = BuildState.load(_file, LOG);
+        state.put("a", new BuildState.Bundle("src", "config", "1"));
+        state.put("b", new BuildState.Bundle("src2", "config2", "2"));
+        state.save();
+
+        BuildState loaded = BuildState.load(_file, LOG);
+        assertEquals(new BuildState.Bundle("src", "config", "1"), loaded.get("a"));
+        assertEquals(new BuildState.Bundle("src2", "config2", "2"), loaded.get("b"));
+        // no temporary files are left behind
+        assertEquals(1, _file.getParentFile().list(new FilenameFilter() {
+            public boolean accept (File dir, String name) {
+                return name.startsWith(_file.getName());
+            }
+        }).length);
+    }
+
+    public void testTruncated ()
+        throws IOException
+    {
+        BuildState state = BuildState.load(_file, LOG);
+        state.put("a", new BuildState.Bundle("src", "config", "1"));
+        state.put("b", new BuildState.Bundle("src2", "config2", "2"));
+        state.save();
+        RandomAccessFile raf = new RandomAccessFile(_file, "rw");
+        try {
+            raf.setLength(raf.length() - 5);
+        } finally {
+            raf.close();
+        }
+
+        BuildState loaded = BuildState.load(_file, LOG);
+        assertNull(loaded.get("a"));
+        assertNull(loaded.get("b"));
+    }
+
+    public void testGarbage ()
+        throws IOException
+    {
+        Files.write("x", _file, Charsets.UTF_8);
+        assertNull(BuildState.load(_file, LOG).get("a"));
+        Files.write("not a build state at all", _file, Charsets.UTF_8);
+        assertNull(BuildState.load(_file, LOG).get("a"));
+    }
+
+    protected File _file;
+
+    protected static final Log LOG = new SystemStreamLog();
+}
@@ -0,0 +1,64 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Checks that wildcard expressions matched as globs agree with the regular expressions they
+ * stand for, and that the others still fall back to regular expressions.
+ */
+public class GlobConditionTest extends TestCase
+{
+    public void testIsGlob ()
+    {
+        for (String glob : new String[] { "m.foo", "m.*", "*.tip", "*", "", "a*b*c", "**" }) {
+            assertTrue(glob, Rules.GlobCondition.isGlob(glob));
+        }
+        for (String other : new String[] { "a+b", "(m|e).*", "[ab]*", "a?", "a\\*", "a\nb",
+            "^m.*", "m.*$" }) {
+            assertFalse(other, Rules.GlobCondition.isGlob(other));
+        }
+    }
+
+    public void testSmatchesFallback ()
+    {
+        assertTrue(Rules.ID.smatches("m.*_tip") instanceof Rules.GlobCondition);
+        assertTrue(Rules.ID.smatches("m.(a|b)") instanceof Rules.PatternCondition);
+        assertTrue(test(Rules.ID.smatches("m.(a|b)*"), "m.abba"));
+        assertFalse(test(Rules.ID.smatches("m.(a|b)*"), "mxabba"));
+    }
+
+    public void testMatchesRegex ()
+    {
+        String[] globs = {
+            "m.foo", "m.*", "*.tip", "*", "", "m.*_tip", "*.x.*", "a*b*c", "**", "a*a", "*aa*",
+            "M.Foo", "ab*ba",
+        };
+        String[] values = {
+            "m.foo", "M.FOO", "m.fooo", "mxfoo", "m.", "m", "x.tip", ".tip", "tip", "m.big_tip",
+            "m.tip", "m_tip", "a.x.b", ".x.", "ax.b", "abc", "ac", "abbbc", "cba", "a", "aa",
+            "aaa", "xaay", "", "aba", "abba", "m.a\nb", "m.\n", "a\nb.tip", "x\r.x.\ry",
+            "\u00e9.tip", "M.\u00c9",
+        };
+        for (String glob : globs) {
+            Rules.Condition condition = new Rules.GlobCondition(Rules.ID, glob);
+            Rules.Condition regex = Rules.ID.matches(glob.replace(".", "\\.").replace("*", ".*"));
+            for (String value : values) {
+                assertEquals("'" + glob + "' on '" + value + "'", test(regex, value),
+                    test(condition, value));
+            }
+        }
+    }
+
+    protected static boolean test (Rules.Condition condition, String id)
+    {
+        return condition.test(RuleChainTest.entry(id),
+            new Rules.Context(Lists.<Rules.Rule>newArrayList(), 0));
+    }
+}
@@ -0,0 +1,124 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.threerings.tools.gxlate.RuleChain.Affix;
+import com.threerings.tools.gxlate.props.PropsFile;
+
+/**
+ * Tests the conversion of regular expressions into affix matches and checks that a chain picks
+ * the same rule as testing the expressions one by one.
+ */
+public class RuleChainTest extends TestCase
+{
+    public void testExact ()
+    {
+        assertAffix(Affix.Kind.EXACT, "m.foo", "m\\.foo");
+        assertAffix(Affix.Kind.EXACT, "m.foo", "^m\\.foo$");
+        assertAffix(Affix.Kind.EXACT, "m.foo", "m\\.foo$");
+        assertAffix(Affix.Kind.EXACT, "", "");
+    }
+
+    public void testPrefixAndSuffix ()
+    {
+        assertAffix(Affix.Kind.PREFIX, "m.", "m\\..*");
+        assertAffix(Affix.Kind.PREFIX, "m.", "^m\\..*$");
+        assertAffix(Affix.Kind.SUFFIX, ".tip", ".*\\.tip");
+        assertAffix(Affix.Kind.SUFFIX, ".tip", "^.*\\.tip$");
+        assertAffix(Affix.Kind.SUFFIX, "", ".*");
+    }
+
+    public void testQuoted ()
+    {
+        assertAffix(Affix.Kind.EXACT, "a.*b", "\\Qa.*b\\E");
+        assertAffix(Affix.Kind.EXACT, "a.b", Pattern.quote("a.b"));
+        assertAffix(Affix.Kind.PREFIX, "a+b", "\\Qa+b\\E.*");
+        assertAffix(Affix.Kind.SUFFIX, "(x)", ".*\\Q(x)\\E");
+        assertAffix(Affix.Kind.EXACT, "ab", "^\\Qa\\Eb$");
+        // an unterminated quote runs to the end
+        assertAffix(Affix.Kind.EXACT, "a$", "\\Qa$");
+    }
+
+    public void testCaseFolding ()
+    {
+        assertAffix(Affix.Kind.EXACT, "m.foo", "M\\.Foo");
+        // only ASCII letters are folded, as with Pattern.CASE_INSENSITIVE
+        assertAffix(Affix.Kind.EXACT, "\u00c0b", "\u00c0B");
+    }
+
+    public void testNotSimple ()
+    {
+        for (String regex : new String[] {
+            "a|b", "a.b", "a.*b", ".*a.*", "a+", "a?", "[ab]", "(a)", "a{2}", "\\d", "\\w.*",
+            "a^", "$a", "m\\..*\\.tip", "\\" }) {
+            assertNull(regex, Affix.parse(regex));
+        }
+    }
+
+    public void testChainMatchesPatterns ()
+    {
+        String[] regexes = {
+            "m\\.title", ".*\\.tip", "m\\..*", "^\\Qe.x\\E$", "(m|e)\\.long_.*", ".*_desc",
+            "M\\.CASE", "t\\.", ".*",
+        };
+        List<Rules.Rule> rules = Lists.newArrayList();
+        for (int ii = 0; ii < regexes.length; ii++) {
+            rules.add(Rules.ID.matches(regexes[ii]).thenSet("type" + ii));
+        }
+        RuleChain chain = new RuleChain(rules.toArray(new Rules.Rule[rules.size()]));
+        Rules.Context context = new Rules.Context(Lists.<Rules.Rule>newArrayList(), 0);
+
+        String[] ids = {
+            "m.title", "M.TITLE", "m.title.tip", "m.other", "e.x", "e.xx", "exx", "e.long_one",
+            "m.long_one", "b.thing_desc", "m.case", "t.", "t.x", "x.tip", "m.a\nb", "a\nb.tip",
+            "", "m", "\u00c0.tip",
+        };
+        for (String id : ids) {
+            String expected = null;
+            for (int ii = 0; ii < regexes.length && expected == null; ii++) {
+                if (Pattern.compile(regexes[ii], Pattern.CASE_INSENSITIVE).matcher(id).matches()) {
+                    expected = "type" + ii;
+                }
+            }
+            Map<Field, String> fields = Maps.newEnumMap(Field.class);
+            Rules.Status status = chain.apply(entry(id), fields, context);
+            assertEquals(id, expected, fields.get(Field.TYPE));
+            assertEquals(id, expected != null, status != null);
+        }
+    }
+
+    protected static void assertAffix (Affix.Kind kind, String literal, String regex)
+    {
+        Affix affix = Affix.parse(regex);
+        assertNotNull(regex, affix);
+        assertEquals(regex, kind, affix.kind);
+        assertEquals(regex, literal, affix.literal);
+    }
+
+    protected static PropsFile.Entry entry (final String id)
+    {
+        return new PropsFile.Entry() {
+            public String getId () {
+                return id;
+            }
+            public String getComment () {
+                return "";
+            }
+            public String getValue () {
+                return "";
+            }
+        };
+    }
+}
@@ -0,0 +1,174 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests recording the progress of an upload and working out what is left of it.
+ */
+public class SyncJournalTest extends TestCase
+{
+    @Override protected void setUp ()
+        throws Exception
+    {
+        _file = File.createTempFile("journal", ".bin");
+        _file.delete();
+        _journal = new SyncJournal(_file);
+        _plan = new UploadPlan();
+        for (String name : new String[] { "alpha", "beta", "gamma" }) {
+            UploadPlan.Bundle bundle = new UploadPlan.Bundle(name, name + "0");
+            for (int ii = 0; ii < 250; ii++) {
+                Map<String, String> cells = ImmutableMap.of("Id", name + ii);
+                bundle.inserts.add(cells);
+                bundle.updates.add(new UploadPlan.Update(ii + 2, name + ii, cells,
+                    ImmutableMap.<String, String>of()));
+            }
+            bundle.deletes.put(300, name + "gone");
+            _plan.bundles.add(bundle);
+        }
+    }
+
+    @Override protected void tearDown ()
+        throws Exception
+    {
+        _journal.delete();
+    }
+
+    public void testRemaining ()
+        throws IOException
+    {
+        assertFalse(_journal.exists());
+        _journal.begin(_plan);
+        _journal.updated("alpha", 100, "alpha1");
+        _journal.updated("alpha", 250, "alpha2");
+        _journal.inserted("alpha", 250, "alpha3");
+        _journal.done("alpha");
+        _journal.updated("beta", 100, "beta1");
+        _journal.updated("beta", 200, "beta2");
+        _journal.inserted("beta", 100, "beta3");
+        _journal.end(false);
+        assertTrue(_journal.exists());
+
+        SyncJournal journal = new SyncJournal(_file);
+        UploadPlan remaining = journal.remaining(journal.plan());
+        assertEquals(2, remaining.bundles.size());
+
+        UploadPlan.Bundle beta = remaining.bundles.get(0);
+        assertEquals("beta", beta.name);
+        assertEquals("beta3", beta.worksheetVersion);
+        assertEquals(50, beta.updates.size());
+        assertEquals("beta200", beta.updates.get(0).id);
+        assertEquals(150, beta.inserts.size());
+        assertEquals("beta100", beta.inserts.get(0).get("Id"));
+        assertEquals(ImmutableMap.of(300, "betagone"), beta.deletes);
+
+        // a bundle with nothing recorded is left as planned
+        UploadPlan.Bundle gamma = remaining.bundles.get(1);
+        assertEquals("gamma", gamma.name);
+        assertEquals("gamma0", gamma.worksheetVersion);
+        assertEquals(250, gamma.updates.size());
+        assertEquals(250, gamma.inserts.size());
+    }
+
+    public void testTruncatedRecord ()
+        throws IOException
+    {
+        _journal.begin(_plan);
+        _journal.updated("beta", 100, "beta1");
+        _journal.updated("beta", 200, "beta2");
+        _journal.end(false);
+
+        // cut the last record short, as if the upload died while writing it
+        RandomAccessFile raf = new RandomAccessFile(_file, "rw");
+        try {
+            raf.setLength(raf.length() - 3);
+        } finally {
+            raf.close();
+        }
+
+        SyncJournal journal = new SyncJournal(_file);
+        UploadPlan remaining = journal.remaining(journal.plan());
+        UploadPlan.Bundle beta = remaining.bundles.get(1);
+        assertEquals("beta", beta.name);
+        assertEquals("beta1", beta.worksheetVersion);
+        assertEquals(150, beta.updates.size());
+        assertEquals("beta100", beta.updates.get(0).id);
+    }
+
+    public void testTruncatedType ()
+        throws IOException
+    {
+        _journal.begin(_plan);
+        _journal.updated("alpha", 100, "alpha1");
+        _journal.end(false);
+
+        // a record cut short after its type
+        RandomAccessFile raf = new RandomAccessFile(_file, "rw");
+        try {
+            raf.seek(raf.length());
+            raf.write(1);
+        } finally {
+            raf.close();
+        }
+        UploadPlan remaining = _journal.remaining(_journal.plan());
+        assertEquals(3, remaining.bundles.size());
+        assertEquals(150, remaining.bundles.get(0).updates.size());
+    }
+
+    public void testComplete ()
+        throws IOException
+    {
+        _journal.begin(_plan);
+        for (UploadPlan.Bundle bundle : _plan.bundles) {
+            _journal.done(bundle.name);
+        }
+        _journal.end(true);
+        assertFalse(_journal.exists());
+        assertFalse(new File(_file.getPath() + ".plan").exists());
+    }
+
+    public void testBeginReplaces ()
+        throws IOException
+    {
+        _journal.begin(_plan);
+        _journal.done("alpha");
+        _journal.end(false);
+        _journal.begin(_plan);
+        _journal.end(false);
+        assertEquals(3, _journal.remaining(_journal.plan()).bundles.size());
+    }
+
+    public void testCorrupt ()
+        throws IOException
+    {
+        _journal.begin(_plan);
+        _journal.end(false);
+        RandomAccessFile raf = new RandomAccessFile(_file, "rw");
+        try {
+            raf.writeInt(0);
+        } finally {
+            raf.close();
+        }
+        try {
+            _journal.remaining(_journal.plan());
+            fail("read a journal with the wrong magic number");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    protected File _file;
+    protected SyncJournal _journal;
+    protected UploadPlan _plan;
+}
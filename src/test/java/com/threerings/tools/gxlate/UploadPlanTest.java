@@ -0,0 +1,129 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/**
+ * Tests saving and loading upload plans.
+ */
+public class UploadPlanTest extends TestCase
+{
+    @Override protected void setUp ()
+        throws Exception
+    {
+        _file = File.createTempFile("plan", ".bin");
+    }
+
+    @Override protected void tearDown ()
+        throws Exception
+    {
+        _file.delete();
+    }
+
+    public void testRoundTrip ()
+        throws IOException
+    {
+        UploadPlan plan = new UploadPlan();
+        UploadPlan.Bundle bundle = new UploadPlan.Bundle("bundle", "1234");
+        // column order is kept, and values may be too long for writeUTF
+        bundle.inserts.add(cells("Id", "m.new", "English", "New \u00e9\u4e2d", "Notes", null));
+        bundle.inserts.add(cells("Id", "m.long", "English", Strings.repeat("\u4e2d", 30000)));
+        bundle.updates.add(new UploadPlan.Update(7, "m.old", cells("English", "Changed"),
+            cells("English", "Old")));
+        bundle.deletes.put(12, "m.gone");
+        bundle.deletedCells.put(12, cells("Id", "m.gone", "English", "Gone"));
+        bundle.deletes.put(3, "m.also_gone");
+        plan.bundles.add(bundle);
+        plan.bundles.add(new UploadPlan.Bundle("empty", null));
+
+        plan.save(_file);
+        UploadPlan loaded = UploadPlan.load(_file);
+
+        assertEquals(2, loaded.bundles.size());
+        UploadPlan.Bundle copy = loaded.bundles.get(0);
+        assertEquals("bundle", copy.name);
+        assertEquals("1234", copy.worksheetVersion);
+        assertEquals(bundle.inserts, copy.inserts);
+        assertEquals(Lists.newArrayList(bundle.inserts.get(0).keySet()),
+            Lists.newArrayList(copy.inserts.get(0).keySet()));
+        assertEquals(1, copy.updates.size());
+        assertEquals(7, copy.updates.get(0).row);
+        assertEquals("m.old", copy.updates.get(0).id);
+        assertEquals(bundle.updates.get(0).cells, copy.updates.get(0).cells);
+        assertEquals(bundle.updates.get(0).previous, copy.updates.get(0).previous);
+        assertEquals(bundle.deletes, copy.deletes);
+        assertEquals(bundle.deletedCells.get(12), copy.deletedCells.get(12));
+        assertTrue(copy.deletedCells.get(3).isEmpty());
+        assertEquals(Lists.newArrayList(3, 12), Lists.newArrayList(copy.deletes.keySet()));
+
+        UploadPlan.Bundle empty = loaded.bundles.get(1);
+        assertEquals("empty", empty.name);
+        assertNull(empty.worksheetVersion);
+        assertTrue(empty.isEmpty());
+        assertFalse(loaded.isEmpty());
+    }
+
+    public void testEmpty ()
+        throws IOException
+    {
+        new UploadPlan().save(_file);
+        UploadPlan loaded = UploadPlan.load(_file);
+        assertTrue(loaded.bundles.isEmpty());
+        assertTrue(loaded.isEmpty());
+    }
+
+    public void testDescribe ()
+    {
+        UploadPlan.Bundle bundle = new UploadPlan.Bundle("bundle", "1234");
+        bundle.inserts.add(cells("Id", "m.new", "English", "New", "Notes", null));
+        bundle.updates.add(new UploadPlan.Update(7, "m.old",
+            cells("English", "Changed", "Verify", "CHANGE", "French", "Pareil"),
+            cells("English", "Old", "Verify", null, "French", "Pareil")));
+        bundle.deletes.put(12, "m.gone");
+        bundle.deletedCells.put(12, cells("Id", "m.gone", "English", "Gone"));
+
+        assertEquals(Lists.newArrayList(
+            "Insert into 'bundle': Id=\"m.new\", English=\"New\"",
+            "Update 'bundle' row 7 (m.old) English: \"Old\" -> \"Changed\"",
+            "Update 'bundle' row 7 (m.old) Verify: (empty) -> \"CHANGE\"",
+            "Delete from 'bundle' row 12 (m.gone): Id=\"m.gone\", English=\"Gone\""),
+            bundle.describe());
+    }
+
+    public void testNotAPlan ()
+        throws IOException
+    {
+        Files.write("not a plan", _file, Charsets.UTF_8);
+        try {
+            UploadPlan.load(_file);
+            fail("loaded a file that is not a plan");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    protected static Map<String, String> cells (String... keysAndValues)
+    {
+        Map<String, String> cells = Maps.newLinkedHashMap();
+        for (int ii = 0; ii < keysAndValues.length; ii += 2) {
+            cells.put(keysAndValues[ii], keysAndValues[ii + 1]);
+        }
+        return cells;
+    }
+
+    protected File _file;
+}
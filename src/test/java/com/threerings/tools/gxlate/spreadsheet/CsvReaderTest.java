@@ -0,0 +1,109 @@
+//
+// Google Translation Plugin - maven plugin facilitating localization using google docs
+// Copyright (c) 2014, Three Rings Design, Inc. - All rights reserved.
+// http://github.com/threerings/gxlate-plugin/blob/master/LICENSE
+
+package com.threerings.tools.gxlate.spreadsheet;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests reading records of comma separated values.
+ */
+public class CsvReaderTest extends TestCase
+{
+    public void testPlain ()
+        throws IOException
+    {
+        assertRecords("a,b,c\nd,e,f\n", rec("a", "b", "c"), rec("d", "e", "f"));
+        assertRecords("a,b\nc,d", rec("a", "b"), rec("c", "d"));
+        assertRecords("a,,\n,b\n", rec("a", "", ""), rec("", "b"));
+        assertRecords("");
+    }
+
+    public void testCrLf ()
+        throws IOException
+    {
+        assertRecords("a,b\r\nc,d\r\n", rec("a", "b"), rec("c", "d"));
+        assertRecords("a,\r\n\r\nb\r\n", rec("a", ""), rec(""), rec("b"));
+    }
+
+    public void testQuoted ()
+        throws IOException
+    {
+        assertRecords("\"a,b\",c\n", rec("a,b", "c"));
+        assertRecords("\"say \"\"hi\"\"\",\"\"\n", rec("say \"hi\"", ""));
+        assertRecords("\"two\nlines\",x\r\n\"crlf\r\ninside\"\r\n",
+            rec("two\nlines", "x"), rec("crlf\r\ninside"));
+        assertRecords("\"\"\"\"", rec("\""));
+    }
+
+    public void testUnterminatedQuote ()
+    {
+        try {
+            read(new StringReader("a,\"b\nc\n"));
+            fail("read an unterminated quote");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    public void testSmallReads ()
+        throws IOException
+    {
+        // fields and line ends that span the reader's blocks
+        Reader trickle = new StringReader("\"a\"\"b\",c\r\nd\r\n") {
+            @Override public int read (char[] buf, int off, int len)
+                throws IOException {
+                return super.read(buf, off, Math.min(len, 1));
+            }
+        };
+        assertEquals(Arrays.asList(rec("a\"b", "c"), rec("d")), read(trickle));
+    }
+
+    public void testTable ()
+        throws IOException
+    {
+        // as exported by a worksheet, with an unnamed column and a blank row
+        Table table = Table.read(new CsvReader(new StringReader(
+            "Id,English,\r\nm.a,A,x\r\n,,\r\nm.b,\"B, b\",\r\n"), ','));
+        List<Row> rows = table.getRows();
+        assertEquals(3, rows.size());
+        assertEquals(2, rows.get(0).getNum());
+        assertEquals(ImmutableMap.of("Id", "m.a", "English", "A"), rows.get(0).getValues());
+        assertNull(rows.get(1));
+        assertEquals(4, rows.get(2).getNum());
+        assertEquals(ImmutableMap.of("Id", "m.b", "English", "B, b"), rows.get(2).getValues());
+    }
+
+    protected static void assertRecords (String csv, List<?>... expected)
+        throws IOException
+    {
+        assertEquals(csv, Arrays.asList(expected), read(new StringReader(csv)));
+    }
+
+    protected static List<List<String>> read (Reader in)
+        throws IOException
+    {
+        CsvReader reader = new CsvReader(in, ',');
+        List<List<String>> records = Lists.newArrayList();
+        for (List<String> record; (record = reader.readRecord()) != null; ) {
+            records.add(record);
+        }
+        return records;
+    }
+
+    protected static List<String> rec (String... fields)
+    {
+        return Arrays.asList(fields);
+    }
+}